@@ -0,0 +1,90 @@
+package edu.uob;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of GameServer.handleCommand for each kind of command.
+ *
+ * <p>Every command is either read-only or undone by its pair, so the world is in the same state
+ * at every invocation. The actions file is the extended one plus a repeatable "examine" action
+ * with several subjects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    private GameServer server;
+
+    @Setup
+    public void setup() {
+        server = new GameServer(StagBenchmarks.configFile("extended-entities.dot"),
+                StagBenchmarks.configFile("benchmark-actions.xml"));
+
+        // a player standing in the cabin, next to the trapdoor, axe and coin
+        server.handleCommand("simon: look");
+        // a player holding the horn at the riverbank
+        server.handleCommand("bugler: goto forest");
+        server.handleCommand("bugler: goto riverbank");
+        server.handleCommand("bugler: get horn");
+        // a player walking between the cabin and the forest
+        server.handleCommand("walker: look");
+    }
+
+    @Benchmark
+    public String look() {
+        return server.handleCommand("simon: look");
+    }
+
+    @Benchmark
+    public String inventory() {
+        return server.handleCommand("bugler: inv");
+    }
+
+    @Benchmark
+    public String health() {
+        return server.handleCommand("simon: health");
+    }
+
+    @Benchmark
+    public void getDrop(Blackhole blackhole) {
+        blackhole.consume(server.handleCommand("simon: get potion"));
+        blackhole.consume(server.handleCommand("simon: drop potion"));
+    }
+
+    @Benchmark
+    public void gotoRoundTrip(Blackhole blackhole) {
+        blackhole.consume(server.handleCommand("walker: goto forest"));
+        blackhole.consume(server.handleCommand("walker: goto cabin"));
+    }
+
+    @Benchmark
+    public String singleSubjectAction() {
+        return server.handleCommand("bugler: blow horn");
+    }
+
+    @Benchmark
+    public String multiSubjectAction() {
+        return server.handleCommand("simon: please examine the trapdoor");
+    }
+
+    @Benchmark
+    public String invalidCommand() {
+        return server.handleCommand("simon: dance wildly");
+    }
+}
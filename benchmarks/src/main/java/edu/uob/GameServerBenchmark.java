@@ -0,0 +1,41 @@
+package edu.uob;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of loading a game from config/extended-entities.dot and config/extended-actions.xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameServerBenchmark {
+
+    private File entitiesFile;
+    private File actionsFile;
+
+    @Setup
+    public void setup() {
+        entitiesFile = StagBenchmarks.configFile("extended-entities.dot");
+        actionsFile = StagBenchmarks.configFile("extended-actions.xml");
+    }
+
+    @Benchmark
+    public GameServer construct() {
+        return new GameServer(entitiesFile, actionsFile);
+    }
+}
@@ -0,0 +1,60 @@
+package edu.uob;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of rendering a location for "look", with and without anything having changed in the room.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBenchmark {
+
+    @Param({"5", "100"})
+    public int entities;
+
+    private Location location;
+    private Player visitor;
+
+    @Setup
+    public void setup() {
+        location = new Location("hall", "A crowded hall");
+        for (int i = 0; i < entities; i++) {
+            location.addArtefact(new Artefact("artefact" + i, "A dropped item"));
+            location.addFurniture(new Furniture("furniture" + i, "A piece of furniture"));
+            location.addCharacter(new Player("player" + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            location.addTo(new Location("room" + i, "A side room"));
+        }
+        visitor = new Player("visitor");
+    }
+
+    @Benchmark
+    public String lookUnchanged() {
+        return location.toString();
+    }
+
+    @Benchmark
+    public String lookAfterPlayerEnters() {
+        location.addCharacter(visitor);
+        String description = location.toString();
+        location.removeCharacter(visitor.getName());
+        return description;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.uob;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ *
+ * <p>Takes the usual JMH command line, but always adds the GC profiler so every run reports the
+ * allocation rate next to throughput and average latency.
+ */
+public final class StagBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    // the config folder, whether the benchmarks are run from the repository root or from this module
+    static File configFile(String name) {
+        Path local = Paths.get("config", name);
+        if (local.toFile().exists()) {
+            return local.toAbsolutePath().toFile();
+        }
+        Path parent = Paths.get("..", "config", name);
+        if (parent.toFile().exists()) {
+            return parent.toAbsolutePath().normalize().toFile();
+        }
+        return Paths.get("benchmarks", "config", name).toAbsolutePath().toFile();
+    }
+}
@@ -0,0 +1,228 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for actions files, which builds the actions in one forward pass over the XML
+ * without keeping the document in memory.
+ *
+ * <p>It accepts the schema of {@code config/extended-actions.xml}: an {@code actions} root holding
+ * {@code action} elements, each with {@code triggers} (of {@code keyphrase}), {@code subjects},
+ * {@code consumed} and {@code produced} (of {@code entity}) and a {@code narration}. An action
+ * which is missing one of those or contains an element the schema doesn't know is reported with
+ * its line number and skipped, the rest of the file is still loaded.
+ */
+public final class ActionsFileReader {
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        // an actions file has no business pulling in other files
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final File file;
+    private final List<String> problems = new ArrayList<>();
+
+    // the action being read, and whether anything was wrong with it
+    private WorldBundle.ActionDefinition action;
+    private int actionLine;
+    private boolean malformed;
+    private final List<String> sections = new ArrayList<>();
+    // the entity list of the open section, null for triggers
+    private List<String> section;
+    private String sectionName;
+    private final StringBuilder text = new StringBuilder();
+    private boolean collecting;
+
+    public ActionsFileReader(File file) {
+        this.file = file;
+    }
+
+    // every problem found so far, as "file:line: message"
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Reads every well formed action of the file. A syntax error stops the reading, and is
+     * reported along with the malformed actions.
+     *
+     * @return The actions in file order.
+     * @throws IOException If the file can't be read.
+     */
+    public List<WorldBundle.ActionDefinition> read() throws IOException {
+        List<WorldBundle.ActionDefinition> actions = new ArrayList<>();
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(stream);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            startElement(reader.getLocalName(), reader.getLocation().getLineNumber());
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (collecting) {
+                                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            endElement(reader.getLocalName(), actions);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            int line = e.getLocation() == null ? -1 : e.getLocation().getLineNumber();
+            problems.add(file + ":" + line + ": " + e.getMessage());
+        }
+        return actions;
+    }
+
+    private void startElement(String name, int line) {
+        switch (name) {
+            case "actions":
+                break;
+            case "action":
+                if (action != null) {
+                    report(line, "<action> inside another action");
+                }
+                action = new WorldBundle.ActionDefinition();
+                actionLine = line;
+                malformed = false;
+                sections.clear();
+                break;
+            case "triggers":
+            case "subjects":
+            case "consumed":
+            case "produced":
+                if (action == null || sectionName != null) {
+                    report(line, "<" + name + "> outside of an action");
+                    break;
+                }
+                if (sections.contains(name)) {
+                    report(line, "second <" + name + "> in the action");
+                }
+                sections.add(name);
+                sectionName = name;
+                section = sectionEntities(name);
+                break;
+            case "keyphrase":
+            case "entity":
+                if (sectionName == null || name.equals("keyphrase") != sectionName.equals("triggers")) {
+                    report(line, "<" + name + "> outside of " + (name.equals("keyphrase") ? "<triggers>" : "<subjects>, <consumed> or <produced>"));
+                    break;
+                }
+                startText();
+                break;
+            case "narration":
+                if (action == null || sectionName != null) {
+                    report(line, "<narration> outside of an action");
+                    break;
+                }
+                sections.add(name);
+                startText();
+                break;
+            default:
+                report(line, "unknown element <" + name + ">");
+                break;
+        }
+    }
+
+    private void endElement(String name, List<WorldBundle.ActionDefinition> actions) {
+        switch (name) {
+            case "keyphrase":
+                if (collecting) {
+                    // keep the spaces inside multi-word keyphrases such as "cut down"
+                    String keyphrase = CommandTokenizer.normalize(text.toString());
+                    if (!keyphrase.isEmpty()) {
+                        action.getTriggers().add(keyphrase);
+                    }
+                }
+                break;
+            case "entity":
+                if (collecting) {
+                    section.add(withoutWhitespace(text));
+                }
+                break;
+            case "narration":
+                if (collecting) {
+                    action.setNarration(text.toString());
+                }
+                break;
+            case "triggers":
+            case "subjects":
+            case "consumed":
+            case "produced":
+                sectionName = null;
+                section = null;
+                break;
+            case "action":
+                for (String required : new String[] {"triggers", "subjects", "consumed", "produced", "narration"}) {
+                    if (!sections.contains(required)) {
+                        report(actionLine, "action has no <" + required + ">");
+                    }
+                }
+                if (!malformed) {
+                    actions.add(action);
+                }
+                action = null;
+                break;
+            default:
+                break;
+        }
+        collecting = false;
+    }
+
+    private List<String> sectionEntities(String name) {
+        switch (name) {
+            case "subjects":
+                return action.getSubjects();
+            case "consumed":
+                return action.getConsumed();
+            case "produced":
+                return action.getProduced();
+            default:
+                return null;
+        }
+    }
+
+    private void startText() {
+        text.setLength(0);
+        collecting = true;
+    }
+
+    private void report(int line, String message) {
+        String skipped = action == null ? "" : line == actionLine ? ", skipping the action" : ", skipping the action on line " + actionLine;
+        problems.add(file + ":" + line + ": " + message + skipped);
+        malformed = true;
+    }
+
+    private static String withoutWhitespace(CharSequence text) {
+        StringBuilder stripped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            if (!java.lang.Character.isWhitespace(text.charAt(i))) {
+                stripped.append(text.charAt(i));
+            }
+        }
+        return stripped.toString();
+    }
+}
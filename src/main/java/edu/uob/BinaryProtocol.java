@@ -0,0 +1,103 @@
+package edu.uob;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Length-prefixed binary framing, which a client of the non-blocking server can switch to instead
+ * of the newline terminated text protocol.
+ *
+ * <p>The client opts in by sending {@link #HELLO} as the very first bytes of the connection (a text
+ * command never starts with a zero byte) and the server answers with the same bytes. After that
+ * every message in either direction is a frame: a big-endian int holding the length of the rest of
+ * the frame, an opcode byte and a UTF-8 payload. The client names its player once with a
+ * {@link #LOGIN} frame, then sends {@link #COMMAND} frames and gets one {@link #RESPONSE} frame back
+ * for each, in order. Frames the server can't handle are answered with an {@link #ERROR} frame.
+ * After a {@link #SUBSCRIBE} frame the server also pushes {@link #EVENT} frames in between the
+ * responses whenever the player's location changes. The subscription takes effect in order with
+ * the commands of the connection, so the changes are certain to be pushed once the response to
+ * the next command has arrived.
+ */
+public final class BinaryProtocol {
+
+    public static final byte VERSION = 1;
+    public static final byte[] HELLO = {0, 'S', 'T', 'G', VERSION};
+
+    // client to server, the payload is the player name, optionally with its world in front: world/player
+    public static final byte LOGIN = 1;
+    // client to server, the payload is the command without the player name
+    public static final byte COMMAND = 2;
+    // client to server, no payload, asks for the changes of the player's location to be pushed
+    public static final byte SUBSCRIBE = 5;
+    // server to client
+    public static final byte RESPONSE = 3;
+    public static final byte ERROR = 4;
+    // server to client at any time after SUBSCRIBE, see LocationFeed
+    public static final byte EVENT = 6;
+
+    // the length prefix and the opcode
+    public static final int HEADER_LENGTH = Integer.BYTES + 1;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Encodes a frame straight into a buffer of exactly its size.
+     *
+     * @param opcode The opcode of the frame.
+     * @param payload The text of the frame.
+     * @return The frame, ready to be written.
+     */
+    public static ByteBuffer frame(byte opcode, CharSequence payload) {
+        int length = utf8Length(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + length);
+        frame.putInt(1 + length).put(opcode);
+        putUtf8(payload, frame);
+        return frame.flip();
+    }
+
+    // the number of bytes the UTF-8 encoding of text takes, unpaired surrogates take one byte as '?'
+    static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (java.lang.Character.isHighSurrogate(c) && i + 1 < text.length() && java.lang.Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (java.lang.Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // encodes text as UTF-8 into the buffer, which has to have utf8Length(text) bytes remaining
+    static void putUtf8(CharSequence text, ByteBuffer buffer) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (java.lang.Character.isHighSurrogate(c) && i + 1 < text.length() && java.lang.Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = java.lang.Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (java.lang.Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package edu.uob;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the phases of handling a command, so a recording shows which
+ * phase of a slow command took the time.
+ *
+ * <p>Each phase is timed with {@code begin()} and handed to {@link #commit}. While no recording
+ * has the events enabled, {@code begin()} and {@code shouldCommit()} are no-ops the JIT removes
+ * together with the event object, and the fields are never filled in.
+ */
+final class CommandEvents {
+
+    private CommandEvents() {
+    }
+
+    @Category({"STAG", "Command"})
+    @StackTrace(false)
+    abstract static class Phase extends Event {
+        @Label("Player")
+        String player;
+
+        @Label("Trigger")
+        @Description("The basic command or trigger keyphrase, if known by this phase")
+        String trigger;
+
+        @Label("Location")
+        String location;
+    }
+
+    @Name("edu.uob.Parse")
+    @Label("Parse Command")
+    static final class Parse extends Phase {
+    }
+
+    @Name("edu.uob.PlayerLookup")
+    @Label("Look Up Player")
+    @Description("Finding the player and its location, creating the player on its first command")
+    static final class PlayerLookup extends Phase {
+    }
+
+    @Name("edu.uob.TriggerMatch")
+    @Label("Match Trigger")
+    static final class TriggerMatch extends Phase {
+    }
+
+    @Name("edu.uob.Preconditions")
+    @Label("Check Preconditions")
+    @Description("Checking one candidate action against the command and the entities at hand")
+    static final class Preconditions extends Phase {
+    }
+
+    @Name("edu.uob.Mutation")
+    @Label("Consume and Produce")
+    static final class Mutation extends Phase {
+    }
+
+    @Name("edu.uob.Render")
+    @Label("Render Response")
+    static final class Render extends Phase {
+    }
+
+    // ends a phase and commits it if a recording wants it
+    static void commit(Phase event, String player, String trigger, String location) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = player;
+            event.trigger = trigger;
+            event.location = location;
+            event.commit();
+        }
+    }
+}
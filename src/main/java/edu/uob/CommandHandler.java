@@ -0,0 +1,132 @@
+package edu.uob;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anything the socket servers can hand incoming command lines to: a single game, or a
+ * {@link WorldHost} routing them to one of many.
+ *
+ * <p>Besides single command lines, clients can send a batch: a {@code BATCH <count>} line
+ * followed by that many command lines. The responses come back in order, each framed as usual.
+ *
+ * <p>A response may only be sent once the changes it reports are saved. The plain methods block
+ * until they are, the ones taking a {@link Saved} return straight away and call it back instead.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    String BATCH_HEADER = "BATCH ";
+    int MAX_BATCH = 1024;
+    // sent instead of a response whose changes couldn't be saved
+    String SAVE_FAILED = "[Error]: The game could not be saved, please try again\n";
+
+    @FunctionalInterface
+    interface Saved {
+        /**
+         * Called once, possibly on another thread, when the response may be sent.
+         *
+         * @param saved False if the changes couldn't be saved, the response must then be replaced
+         *     by {@link #SAVE_FAILED}.
+         */
+        void done(boolean saved);
+    }
+
+    /**
+     * @param command The command line as sent by the client.
+     * @return The response to send back.
+     */
+    String handleCommand(String command);
+
+    /**
+     * Handles a command, rendering the response into a sink instead of returning it.
+     *
+     * @param command The command line as sent by the client.
+     * @param sink Where the response goes.
+     */
+    default void handleCommand(String command, ResponseSink sink) {
+        sink.append(handleCommand(command));
+    }
+
+    /**
+     * Handles a command without waiting for its changes to be saved.
+     *
+     * @param command The command line as sent by the client.
+     * @param sink Where the response goes, it is complete when this returns.
+     * @param saved Called back once the response may be sent.
+     */
+    default void handleCommand(String command, ResponseSink sink, Saved saved) {
+        handleCommand(command, sink);
+        saved.done(true);
+    }
+
+    /**
+     * Handles a command received over the {@link BinaryProtocol}.
+     *
+     * @param userName The player the connection logged in as.
+     * @param command The UTF-8 bytes of the command, from its position to its limit.
+     * @param sink Where the response goes.
+     */
+    default void handleCommand(String userName, ByteBuffer command, ResponseSink sink) {
+        sink.append(handleCommand(userName + ": " + StandardCharsets.UTF_8.decode(command)));
+    }
+
+    // the same without waiting for the changes to be saved
+    default void handleCommand(String userName, ByteBuffer command, ResponseSink sink, Saved saved) {
+        handleCommand(userName, command, sink);
+        saved.done(true);
+    }
+
+    /**
+     * Asks for the changes of the player's location to be pushed to the session, see
+     * {@link LocationFeed}. Handlers which can't push anything ignore it.
+     *
+     * @param userName The player the session plays as.
+     * @param subscriber The session.
+     */
+    default void subscribe(String userName, LocationFeed.Subscriber subscriber) {
+    }
+
+    default void unsubscribe(String userName, LocationFeed.Subscriber subscriber) {
+    }
+
+    /**
+     * Handles the commands of a batch in order.
+     *
+     * @param commands The command lines of the batch.
+     * @return The response to each command, in the same order.
+     */
+    default List<String> handleBatch(List<String> commands) {
+        List<String> responses = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            responses.add(handleCommand(command));
+        }
+        return responses;
+    }
+
+    // the same without waiting for the changes of the batch to be saved, saved covers all of them
+    default List<String> handleBatch(List<String> commands, Saved saved) {
+        List<String> responses = handleBatch(commands);
+        saved.done(true);
+        return responses;
+    }
+
+    /**
+     * @param line A line sent by a client.
+     * @return -1 if the line isn't a batch header, otherwise the number of commands which follow
+     *     it, or 0 if that number isn't between 1 and {@link #MAX_BATCH}.
+     */
+    static int batchSize(String line) {
+        if (!line.startsWith(BATCH_HEADER)) {
+            return -1;
+        }
+        try {
+            int size = Integer.parseInt(line.substring(BATCH_HEADER.length()).trim());
+            return size >= 1 && size <= MAX_BATCH ? size : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
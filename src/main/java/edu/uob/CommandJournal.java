@@ -0,0 +1,395 @@
+package edu.uob;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the commands which changed the game, so the game can be rebuilt after a
+ * crash by replaying them on top of the last snapshot (or the freshly loaded config).
+ *
+ * <p>Commands are appended to an in-memory batch while the locks they changed the game under are
+ * still held, so conflicting commands end up in the journal in the order they were applied. Before
+ * a response goes out the thread waits for every record appended so far to be on disk, not just
+ * its own: a response to a command which only reads the game may show the changes of others, and
+ * must not show any a crash could still lose. The first waiting thread writes and forces the whole
+ * batch, and every command appended in the meantime rides along with it (group commit). A thread which mustn't block, like the selector thread of the non-blocking
+ * server, registers a callback with {@link #whenDurable} instead, and the journal's flusher thread
+ * writes the batch and calls it back.
+ *
+ * <p>The journal is split into segment files named after the sequence number of their first
+ * record. Each record is its length, a CRC32 of its payload, the sequence number, a type and the
+ * text. A torn record at the end of the last segment is cut off on startup, and segments a
+ * snapshot covers are deleted.
+ */
+public final class CommandJournal implements Closeable {
+
+    // a player joined the game, the text is the player's name
+    static final byte JOINED = 1;
+    // a command which changed the game, the text is the whole command
+    static final byte COMMAND = 2;
+
+    private static final long SEGMENT_SIZE = 8L << 20;
+    private static final String SUFFIX = ".journal";
+    // length and checksum
+    private static final int HEADER = 8;
+    // sequence number and type
+    private static final int PAYLOAD_HEADER = 9;
+
+    @FunctionalInterface
+    public interface Replay {
+        void apply(byte type, String text);
+    }
+
+    @FunctionalInterface
+    public interface Durable {
+        // false if the records couldn't be written
+        void done(boolean durable);
+    }
+
+    private static final class Waiter {
+        private final long sequence;
+        private final Durable callback;
+
+        private Waiter(long sequence, Durable callback) {
+            this.sequence = sequence;
+            this.callback = callback;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+
+    // guarded by this
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private long appended;
+
+    // guarded by flushLock
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private FileChannel segment;
+    private long segmentStart;
+    private IOException failure;
+    private volatile long durable;
+
+    // guarded by waiters, the flusher thread is started by the first callback
+    private final List<Waiter> waiters = new ArrayList<>();
+    private Thread flusher;
+    private boolean closed;
+
+    private CommandJournal(Path directory, long segmentSize, long last) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.appended = last;
+        this.durable = last;
+    }
+
+    /**
+     * Opens the journal in a directory, replaying every record after the given sequence number.
+     *
+     * @param directory The directory holding the segment files, created if needed.
+     * @param covered The sequence number of the last record already reflected in the game.
+     * @param replay Called for every record which isn't covered yet, in order.
+     * @return The journal, ready for appending.
+     * @throws IOException If the journal can't be read, or records are missing or corrupt.
+     */
+    public static CommandJournal open(Path directory, long covered, Replay replay) throws IOException {
+        return open(directory, covered, replay, SEGMENT_SIZE);
+    }
+
+    static CommandJournal open(Path directory, long covered, Replay replay, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> starts = segmentStarts(directory);
+        long last = covered;
+        for (int i = 0; i < starts.size(); i++) {
+            last = replaySegment(segmentFile(directory, starts.get(i)), covered, last, replay, i == starts.size() - 1);
+        }
+
+        CommandJournal journal = new CommandJournal(directory, segmentSize, last);
+        // a segment left behind without a single complete record
+        Files.deleteIfExists(segmentFile(directory, last + 1));
+        journal.flushLock.lock();
+        try {
+            journal.openSegment(last + 1);
+        } finally {
+            journal.flushLock.unlock();
+        }
+        journal.truncate(covered);
+        return journal;
+    }
+
+    /**
+     * Appends a record to the current batch. Call it while the changes it records are still locked.
+     *
+     * @param type {@link #JOINED} or {@link #COMMAND}.
+     * @param text The name of the player who joined, or the command.
+     * @return The sequence number of the record.
+     */
+    public long append(byte type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER + PAYLOAD_HEADER + bytes.length);
+        long sequence;
+        synchronized (this) {
+            sequence = ++appended;
+            record.putInt(PAYLOAD_HEADER + bytes.length);
+            record.putInt(0);
+            record.putLong(sequence);
+            record.put(type);
+            record.put(bytes);
+            CRC32 checksum = new CRC32();
+            checksum.update(record.array(), HEADER, PAYLOAD_HEADER + bytes.length);
+            record.putInt(4, (int) checksum.getValue());
+            batch.write(record.array(), 0, record.capacity());
+        }
+        return sequence;
+    }
+
+    // the sequence number of the last record appended by any thread
+    public synchronized long lastSequence() {
+        return appended;
+    }
+
+    /**
+     * Blocks until every record appended so far, by any thread, is on disk.
+     *
+     * @throws IOException If the journal can't be written.
+     */
+    public void awaitDurable() throws IOException {
+        long sequence = lastSequence();
+        if (durable >= sequence) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            // the batch written while we waited for the lock may already have covered it
+            if (durable < sequence) {
+                flush();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Calls back once every record appended so far, by any thread, is on disk, without blocking.
+     * The callback runs right away if they already are, otherwise on the journal's flusher thread,
+     * which writes every record appended in the meantime along with them.
+     *
+     * @param callback Told whether the records could be written.
+     */
+    public void whenDurable(Durable callback) {
+        long sequence = lastSequence();
+        if (durable >= sequence) {
+            callback.done(true);
+            return;
+        }
+        synchronized (waiters) {
+            if (closed) {
+                callback.done(durable >= sequence);
+                return;
+            }
+            waiters.add(new Waiter(sequence, callback));
+            if (flusher == null) {
+                flusher = new Thread(this::flushWaiters, "journal-flusher");
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+            waiters.notify();
+        }
+    }
+
+    // the flusher thread, one write and force for everything waited on since the last one
+    private void flushWaiters() {
+        List<Waiter> waiting = new ArrayList<>();
+        while (true) {
+            synchronized (waiters) {
+                while (waiters.isEmpty() && !closed) {
+                    try {
+                        waiters.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (waiters.isEmpty()) {
+                    return;
+                }
+                waiting.addAll(waiters);
+                waiters.clear();
+            }
+            flushLock.lock();
+            try {
+                flush();
+            } catch (IOException e) {
+                // every waiter not covered by an earlier batch is told below
+            } finally {
+                flushLock.unlock();
+            }
+            for (Waiter waiter : waiting) {
+                waiter.callback.done(durable >= waiter.sequence);
+            }
+            waiting.clear();
+        }
+    }
+
+    /**
+     * Deletes every segment whose records are all covered by a snapshot.
+     *
+     * @param covered The sequence number of the last record the snapshot reflects.
+     * @throws IOException If the journal can't be written.
+     */
+    public void truncate(long covered) throws IOException {
+        flushLock.lock();
+        try {
+            // the current segment is never deleted, so start a new one if the snapshot covers any of it
+            if (segmentStart <= covered) {
+                flush();
+                if (segmentStart <= covered) {
+                    rotate();
+                }
+            }
+            List<Long> starts = segmentStarts(directory);
+            for (int i = 0; i + 1 < starts.size(); i++) {
+                // a segment ends right before the next one starts
+                if (starts.get(i + 1) - 1 <= covered) {
+                    Files.delete(segmentFile(directory, starts.get(i)));
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        synchronized (waiters) {
+            closed = true;
+            running = flusher;
+            waiters.notify();
+        }
+        // the callbacks already registered are still written and called back
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushLock.lock();
+        try {
+            flush();
+            segment.close();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // writes and forces the whole batch, with flushLock held
+    private void flush() throws IOException {
+        // once a batch is lost every later record would replay on top of a gap
+        if (failure != null) {
+            throw new IOException("The journal failed earlier", failure);
+        }
+        byte[] bytes;
+        long upTo;
+        synchronized (this) {
+            bytes = batch.toByteArray();
+            batch.reset();
+            upTo = appended;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        durable = upTo;
+        if (segment.size() >= segmentSize) {
+            rotate();
+        }
+    }
+
+    // starts a new segment after the last record written, with flushLock held
+    private void rotate() throws IOException {
+        segment.close();
+        openSegment(durable + 1);
+    }
+
+    private void openSegment(long start) throws IOException {
+        segment = FileChannel.open(segmentFile(directory, start), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentStart = start;
+    }
+
+    private static long replaySegment(Path file, long covered, long last, Replay replay, boolean lastSegment) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int valid = 0;
+        while (in.remaining() >= HEADER) {
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length < PAYLOAD_HEADER || length > in.remaining()) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, in.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long sequence = in.getLong();
+            byte type = in.get();
+            String text = new String(bytes, in.position(), length - PAYLOAD_HEADER, StandardCharsets.UTF_8);
+            in.position(in.position() + length - PAYLOAD_HEADER);
+            valid = in.position();
+
+            if (sequence > covered) {
+                if (sequence != last + 1) {
+                    throw new IOException("The journal is missing records " + (last + 1) + " to " + (sequence - 1) + ": " + file);
+                }
+                replay.apply(type, text);
+                last = sequence;
+            }
+        }
+
+        if (valid < bytes.length) {
+            if (!lastSegment) {
+                throw new IOException("Corrupt journal segment: " + file);
+            }
+            // the server stopped halfway through writing a batch, none of it was acknowledged
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return last;
+    }
+
+    private static List<Long> segmentStarts(Path directory) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> starts.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()))));
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    private static Path segmentFile(Path directory, long start) {
+        return directory.resolve(String.format("%020d", start) + SUFFIX);
+    }
+}
@@ -0,0 +1,227 @@
+package edu.uob;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Splits an incoming "user: command" line into a {@link CommandTokens} buffer in a single pass.
+ *
+ * <p>Every word the game knows about (basic commands, stopwords, entity names and trigger words) is
+ * interned in a table at load time, so tokens are resolved to those canonical strings straight from
+ * the character buffer without allocating a String per word. Words which name something also carry
+ * their {@link SymbolTable} ID, so the engine never has to look the name up again.
+ */
+public final class CommandTokenizer {
+
+    public static final int BASIC_COMMAND = 1;
+    public static final int STOPWORD = 1 << 1;
+
+    private static final String[] BASIC_COMMANDS = {"inventory", "inv", "get", "take", "drop", "goto", "look", "health"};
+    private static final String[] STOPWORDS = {"with", "the", "using", "use", "of", "a", "at", "to", "this", "that", "my", "please"};
+    // stands in for bytes which aren't valid UTF-8
+    private static final int MALFORMED = -1;
+
+    // open addressing table of canonical words and their flags
+    private String[] table;
+    private int[] tableFlags;
+    private int[] tableIds;
+    private int size;
+
+    public CommandTokenizer(Collection<String> vocabulary) {
+        this(vocabulary, new SymbolTable());
+    }
+
+    public CommandTokenizer(Collection<String> vocabulary, SymbolTable symbols) {
+        this.table = new String[64];
+        this.tableFlags = new int[64];
+        this.tableIds = new int[64];
+        for (String word : BASIC_COMMANDS) {
+            add(word, BASIC_COMMAND);
+        }
+        for (String word : STOPWORDS) {
+            add(word, STOPWORD);
+        }
+        for (String word : vocabulary) {
+            add(word, 0);
+        }
+        for (int i = 0; i < table.length; i++) {
+            tableIds[i] = table[i] == null ? -1 : symbols.idOf(table[i]);
+        }
+    }
+
+    public void tokenize(String command, CommandTokens tokens) {
+        int separator = command.indexOf(": ");
+        String userName = separator < 0 ? command : command.substring(0, separator);
+        // toLowerCase returns the same instance when there is nothing to change
+        tokens.reset(userName.toLowerCase());
+        if (separator < 0) {
+            return;
+        }
+
+        int tokenStart = -1;
+        for (int i = separator + 2; i < command.length(); i++) {
+            tokenStart = accept(command.charAt(i), tokenStart, tokens);
+        }
+        accept(' ', tokenStart, tokens);
+    }
+
+    /**
+     * Tokenizes a command sent over the binary protocol straight from its UTF-8 bytes, without
+     * decoding them into a String first. Malformed bytes separate words like punctuation does.
+     *
+     * @param userName The player the command is from.
+     * @param command The UTF-8 bytes of the command, from its position to its limit, which are consumed.
+     * @param tokens The buffer to fill in.
+     */
+    public void tokenize(String userName, ByteBuffer command, CommandTokens tokens) {
+        tokens.reset(userName.toLowerCase());
+        int tokenStart = -1;
+        while (command.hasRemaining()) {
+            int b = command.get();
+            int codePoint;
+            int continuation;
+            if (b >= 0) {
+                codePoint = b;
+                continuation = 0;
+            } else if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                continuation = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                continuation = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                continuation = 3;
+            } else {
+                codePoint = MALFORMED;
+                continuation = 0;
+            }
+            for (; continuation > 0 && codePoint != MALFORMED; continuation--) {
+                if (!command.hasRemaining() || (command.get(command.position()) & 0xC0) != 0x80) {
+                    codePoint = MALFORMED;
+                } else {
+                    codePoint = (codePoint << 6) | (command.get() & 0x3F);
+                }
+            }
+            if (codePoint == MALFORMED || codePoint > java.lang.Character.MAX_CODE_POINT) {
+                tokenStart = accept(' ', tokenStart, tokens);
+            } else if (java.lang.Character.isBmpCodePoint(codePoint)) {
+                tokenStart = accept((char) codePoint, tokenStart, tokens);
+            } else {
+                // the same two chars a String would hold
+                tokenStart = accept(java.lang.Character.highSurrogate(codePoint), tokenStart, tokens);
+                tokenStart = accept(java.lang.Character.lowSurrogate(codePoint), tokenStart, tokens);
+            }
+        }
+        accept(' ', tokenStart, tokens);
+    }
+
+    // adds the next char of a command, returns where the current token starts or -1 between tokens
+    private int accept(char c, int tokenStart, CommandTokens tokens) {
+        c = java.lang.Character.toLowerCase(c);
+        if (isWordChar(c)) {
+            if (tokenStart < 0) {
+                // words are separated by exactly one space in the buffer
+                if (tokens.length() > 0) {
+                    tokens.append(' ');
+                }
+                tokenStart = tokens.length();
+            }
+            tokens.append(c);
+            return tokenStart;
+        }
+        if (tokenStart >= 0) {
+            int tokenEnd = tokens.length();
+            int slot = find(tokens.buffer(), tokenStart, tokenEnd);
+            if (table[slot] == null) {
+                tokens.addToken(tokenStart, tokenEnd, null, 0, -1);
+            } else {
+                tokens.addToken(tokenStart, tokenEnd, table[slot], tableFlags[slot], tableIds[slot]);
+            }
+        }
+        return -1;
+    }
+
+    // lowercases a phrase and joins its words with single spaces, the same way commands are tokenized
+    public static String normalize(String phrase) {
+        StringBuilder normalized = new StringBuilder(phrase.length());
+        boolean inWord = false;
+        for (int i = 0; i < phrase.length(); i++) {
+            char c = java.lang.Character.toLowerCase(phrase.charAt(i));
+            if (isWordChar(c)) {
+                if (!inWord && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                inWord = true;
+            } else {
+                inWord = false;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // hyphens and underscores are part of names such as "trap-door", like they were when commands were split on spaces
+    static boolean isWordChar(char c) {
+        return java.lang.Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    private void add(String word, int flags) {
+        if ((size + 1) * 2 > table.length) {
+            grow();
+        }
+        char[] chars = word.toCharArray();
+        int slot = find(chars, 0, chars.length);
+        if (table[slot] == null) {
+            table[slot] = word;
+            size++;
+        }
+        tableFlags[slot] |= flags;
+    }
+
+    private void grow() {
+        String[] oldTable = table;
+        int[] oldFlags = tableFlags;
+        table = new String[oldTable.length * 2];
+        tableFlags = new int[oldTable.length * 2];
+        tableIds = new int[oldTable.length * 2];
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != null) {
+                char[] chars = oldTable[i].toCharArray();
+                int slot = find(chars, 0, chars.length);
+                table[slot] = oldTable[i];
+                tableFlags[slot] = oldFlags[i];
+            }
+        }
+    }
+
+    // slot holding the word, or the empty slot where it would go
+    private int find(char[] chars, int start, int end) {
+        // same hash as String.hashCode, which the canonical strings have cached
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        int mask = table.length - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (table[slot] != null) {
+            if (table[slot].hashCode() == h && matches(table[slot], chars, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean matches(String word, char[] chars, int start, int end) {
+        if (word.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
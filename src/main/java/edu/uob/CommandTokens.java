@@ -0,0 +1,116 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer holding one tokenized command, filled in by {@link CommandTokenizer}.
+ *
+ * <p>The command text is kept lowercased with its words separated by single spaces, which is also
+ * what the trigger matcher runs over. Each token points into that text and carries the canonical
+ * vocabulary word it matched (null for words the game doesn't know), that word's flags and its
+ * {@link SymbolTable} ID (-1 for words which aren't the name of anything).
+ */
+public final class CommandTokens implements CharSequence {
+
+    private String userName;
+    private char[] text = new char[128];
+    private int length;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private String[] words = new String[16];
+    private int[] flags = new int[16];
+    private int[] ids = new int[16];
+    private int count;
+
+    void reset(String userName) {
+        this.userName = userName;
+        this.length = 0;
+        this.count = 0;
+    }
+
+    void append(char c) {
+        if (length == text.length) {
+            text = Arrays.copyOf(text, length * 2);
+        }
+        text[length++] = c;
+    }
+
+    void addToken(int start, int end, String word, int wordFlags, int id) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            words = Arrays.copyOf(words, count * 2);
+            flags = Arrays.copyOf(flags, count * 2);
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        words[count] = word;
+        flags[count] = wordFlags;
+        ids[count] = id;
+        count++;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // canonical word of a token, or null when it isn't part of the game's vocabulary
+    public String word(int token) {
+        return words[token];
+    }
+
+    // symbol ID of a token, or -1 when it doesn't name a location, entity or player
+    public int id(int token) {
+        return ids[token];
+    }
+
+    public boolean is(int token, int wordFlag) {
+        return (flags[token] & wordFlag) != 0;
+    }
+
+    public int start(int token) {
+        return starts[token];
+    }
+
+    public int end(int token) {
+        return ends[token];
+    }
+
+    public boolean hasAny(int wordFlag) {
+        for (int i = 0; i < count; i++) {
+            if ((flags[i] & wordFlag) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    char[] buffer() {
+        return text;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(text, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(text, 0, length);
+    }
+}
@@ -0,0 +1,394 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Streaming reader for the subset of the DOT language entities files are written in, which fills
+ * in a {@link WorldBundle} in one pass without building a graph model first.
+ *
+ * <p>Like the graphviz parser it replaces, it takes the first sub-graph of the layout to hold the
+ * locations and the second to hold the paths. Every sub-graph of the locations is a location: its
+ * first node is the location itself, and its {@code characters}, {@code artefacts} and
+ * {@code furniture} sub-graphs hold the entities it starts with. Attribute statements, graph
+ * attributes and anything else the game has no use for are skipped, syntax errors are reported
+ * with their line number.
+ */
+public final class EntitiesFileReader {
+
+    // token types
+    private static final int EOF = 0;
+    private static final int ID = 1;
+    private static final int OPEN_BRACE = 2;
+    private static final int CLOSE_BRACE = 3;
+    private static final int OPEN_BRACKET = 4;
+    private static final int CLOSE_BRACKET = 5;
+    private static final int EQUALS = 6;
+    private static final int SEPARATOR = 7;
+    private static final int EDGE = 8;
+
+    // what the statements of a (sub-)graph describe
+    private static final int LAYOUT = 0;
+    private static final int LOCATIONS = 1;
+    private static final int LOCATION = 2;
+    private static final int ENTITIES = 3;
+    private static final int PATHS = 4;
+    private static final int IGNORED = 5;
+
+    private final File file;
+    private Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int line = 1;
+
+    // the current token, and whether it was quoted (a quoted keyword is just a name)
+    private int token;
+    private final StringBuilder text = new StringBuilder();
+    private boolean quoted;
+
+    private WorldBundle bundle;
+    private WorldBundle.LocationDefinition location;
+    private List<WorldBundle.EntityDefinition> entities;
+    private String description;
+
+    public EntitiesFileReader(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the locations and paths of the file into a bundle.
+     *
+     * @param into The bundle to add the locations and paths to.
+     * @throws IOException If the file can't be read or isn't valid DOT.
+     */
+    public void read(WorldBundle into) throws IOException {
+        bundle = into;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            in = reader;
+            next();
+            // [strict] (graph | digraph) [name] { statements }
+            if (isKeyword("strict")) {
+                next();
+            }
+            if (!isKeyword("graph") && !isKeyword("digraph")) {
+                throw error("expected graph or digraph");
+            }
+            next();
+            if (token == ID) {
+                next();
+            }
+            statements(LAYOUT);
+            if (token != EOF) {
+                throw error("unexpected " + describe() + " after the graph");
+            }
+        } finally {
+            in = null;
+        }
+    }
+
+    // { statements }, the opening brace is the current token
+    private void statements(int kind) throws IOException {
+        expect(OPEN_BRACE, "{");
+        int subgraphs = 0;
+        while (token != CLOSE_BRACE) {
+            if (token == EOF) {
+                throw error("missing }");
+            }
+            if (token == SEPARATOR) {
+                next();
+            } else if (isKeyword("subgraph") || token == OPEN_BRACE) {
+                subgraph(kind, subgraphs++);
+            } else if (isKeyword("graph") || isKeyword("node") || isKeyword("edge")) {
+                // default attributes
+                next();
+                attributes();
+            } else if (token == ID) {
+                String name = text.toString();
+                next();
+                if (token == EQUALS) {
+                    // a graph attribute such as splines = ortho
+                    next();
+                    expect(ID, "a value");
+                } else if (token == EDGE) {
+                    edges(kind, name);
+                } else {
+                    node(kind, name);
+                }
+            } else {
+                throw error("unexpected " + describe());
+            }
+        }
+        next();
+    }
+
+    private void subgraph(int kind, int index) throws IOException {
+        String name = null;
+        if (isKeyword("subgraph")) {
+            next();
+            if (token == ID) {
+                name = text.toString();
+                next();
+            }
+        }
+
+        int subKind = IGNORED;
+        if (kind == LAYOUT) {
+            // the first sub-graph holds the locations, the second the paths
+            subKind = index == 0 ? LOCATIONS : index == 1 ? PATHS : IGNORED;
+        } else if (kind == LOCATIONS) {
+            subKind = LOCATION;
+            location = null;
+        } else if (kind == LOCATION && name != null) {
+            if (location == null) {
+                throw error("the location node has to come before its " + name);
+            }
+            switch (name) {
+                case "characters":
+                    entities = location.getCharacters();
+                    subKind = ENTITIES;
+                    break;
+                case "artefacts":
+                    entities = location.getArtefacts();
+                    subKind = ENTITIES;
+                    break;
+                case "furniture":
+                    entities = location.getFurniture();
+                    subKind = ENTITIES;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int start = line;
+        statements(subKind);
+        if (subKind == LOCATION && location == null) {
+            throw error("the location starting on line " + start + " has no node");
+        }
+    }
+
+    private void node(int kind, String name) throws IOException {
+        description = null;
+        attributes();
+        if (kind == LOCATION && location == null) {
+            location = new WorldBundle.LocationDefinition(name, description);
+            bundle.getLocations().add(location);
+        } else if (kind == ENTITIES) {
+            entities.add(new WorldBundle.EntityDefinition(name, description));
+        }
+    }
+
+    // from -> to [-> to ...] [attributes], the first arrow is the current token
+    private void edges(int kind, String from) throws IOException {
+        while (token == EDGE) {
+            next();
+            if (token != ID) {
+                throw error("expected a location after the arrow");
+            }
+            String to = text.toString();
+            if (kind == PATHS) {
+                bundle.getPaths().add(new String[] {from, to});
+            }
+            from = to;
+            next();
+        }
+        attributes();
+    }
+
+    // any number of [name = value, ...] lists, keeping the description
+    private void attributes() throws IOException {
+        while (token == OPEN_BRACKET) {
+            next();
+            while (token != CLOSE_BRACKET) {
+                if (token == SEPARATOR) {
+                    next();
+                    continue;
+                }
+                if (token != ID) {
+                    throw error("expected an attribute name");
+                }
+                String name = text.toString();
+                next();
+                expect(EQUALS, "=");
+                if (token != ID) {
+                    throw error("expected a value for " + name);
+                }
+                if (name.equals("description")) {
+                    description = text.toString();
+                }
+                next();
+            }
+            next();
+        }
+    }
+
+    private void expect(int type, String what) throws IOException {
+        if (token != type) {
+            throw error("expected " + what + " but found " + describe());
+        }
+        next();
+    }
+
+    private boolean isKeyword(String keyword) {
+        return token == ID && !quoted && text.length() == keyword.length() && keyword.equalsIgnoreCase(text.toString());
+    }
+
+    private String describe() {
+        return token == EOF ? "the end of the file" : "'" + text + "'";
+    }
+
+    private IOException error(String message) {
+        return new IOException(file + ":" + line + ": " + message);
+    }
+
+    // reads the next token into token and text
+    private void next() throws IOException {
+        text.setLength(0);
+        quoted = false;
+        int c = skipWhitespaceAndComments();
+        if (c < 0) {
+            token = EOF;
+            return;
+        }
+        switch (c) {
+            case '{': token = OPEN_BRACE; text.append('{'); read(); return;
+            case '}': token = CLOSE_BRACE; text.append('}'); read(); return;
+            case '[': token = OPEN_BRACKET; text.append('['); read(); return;
+            case ']': token = CLOSE_BRACKET; text.append(']'); read(); return;
+            case '=': token = EQUALS; text.append('='); read(); return;
+            case ';':
+            case ',': token = SEPARATOR; text.append((char) c); read(); return;
+            case '"': quotedString(); return;
+            case '<': htmlString(); return;
+            default: break;
+        }
+        if (c == '-' && (peek(1) == '>' || peek(1) == '-')) {
+            token = EDGE;
+            text.append('-').append((char) peek(1));
+            read();
+            read();
+            return;
+        }
+        if (isIdentifierChar(c) || c == '-' || c == '.') {
+            token = ID;
+            do {
+                text.append((char) c);
+                read();
+                c = peek(0);
+            } while (c >= 0 && (isIdentifierChar(c) || c == '.'));
+            return;
+        }
+        throw error("unexpected character '" + (char) c + "'");
+    }
+
+    private int skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            int c = peek(0);
+            if (c < 0) {
+                return c;
+            }
+            if (java.lang.Character.isWhitespace(c)) {
+                read();
+            } else if (c == '#' || (c == '/' && peek(1) == '/')) {
+                while (c >= 0 && c != '\n') {
+                    read();
+                    c = peek(0);
+                }
+            } else if (c == '/' && peek(1) == '*') {
+                read();
+                read();
+                while (peek(0) >= 0 && !(peek(0) == '*' && peek(1) == '/')) {
+                    read();
+                }
+                if (peek(0) < 0) {
+                    throw error("unterminated comment");
+                }
+                read();
+                read();
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void quotedString() throws IOException {
+        int start = line;
+        token = ID;
+        quoted = true;
+        read();
+        while (true) {
+            int c = peek(0);
+            if (c < 0) {
+                throw new IOException(file + ":" + start + ": unterminated string");
+            }
+            read();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\' && (peek(0) == '"' || peek(0) == '\\')) {
+                c = peek(0);
+                read();
+            }
+            text.append((char) c);
+        }
+    }
+
+    private void htmlString() throws IOException {
+        int start = line;
+        token = ID;
+        quoted = true;
+        read();
+        int depth = 1;
+        while (true) {
+            int c = peek(0);
+            if (c < 0) {
+                throw new IOException(file + ":" + start + ": unterminated HTML string");
+            }
+            read();
+            if (c == '<') {
+                depth++;
+            } else if (c == '>' && --depth == 0) {
+                return;
+            }
+            text.append((char) c);
+        }
+    }
+
+    private static boolean isIdentifierChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c >= 0x80;
+    }
+
+    // the character offset characters ahead, or -1 at the end of the file
+    private int peek(int offset) throws IOException {
+        if (position + offset >= limit) {
+            fill();
+            if (position + offset >= limit) {
+                return -1;
+            }
+        }
+        return buffer[position + offset];
+    }
+
+    private void read() throws IOException {
+        if (peek(0) == '\n') {
+            line++;
+        }
+        position++;
+    }
+
+    // keeps the unread characters and reads as many more as fit
+    private void fill() throws IOException {
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        int count = in.read(buffer, limit, buffer.length - limit);
+        if (count > 0) {
+            limit += count;
+        }
+    }
+}
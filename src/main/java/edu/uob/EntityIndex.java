@@ -0,0 +1,125 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index from entity ID (see {@link SymbolTable}) to the entity and whatever currently holds it.
+ *
+ * <p>Entries are replaced (never mutated) on every move, while the stripes of both the old and the
+ * new container are held. A reader can therefore look an entity up without any lock, lock the
+ * container it found and then check the entry is still the same object to know nothing moved.
+ *
+ * <p>Only entities with an ID are indexed, the rest are never produced or consumed.
+ *
+ * <p>The entries live in fixed size chunks which are only ever added, so the index grows with the
+ * symbol table without copying entries other threads may be replacing.
+ */
+public final class EntityIndex {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private static final class Chunk {
+        private final AtomicReferenceArray<Placement> placements = new AtomicReferenceArray<>(1 << CHUNK_BITS);
+    }
+
+    // grown under this, a chunk is never replaced once it is in the array
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    public Placement get(int id) {
+        Chunk chunk = chunkOf(id);
+        return chunk == null ? null : chunk.placements.get(id & CHUNK_MASK);
+    }
+
+    public void placeIn(GameEntity entity, Location location) {
+        set(entity, new Placement(entity, location, null));
+    }
+
+    public void heldBy(Artefact artefact, Player player) {
+        set(artefact, new Placement(artefact, null, player));
+    }
+
+    public void remove(GameEntity entity) {
+        Chunk chunk = chunkOf(entity.getId());
+        if (chunk != null) {
+            chunk.placements.set(entity.getId() & CHUNK_MASK, null);
+        }
+    }
+
+    // removes the entity unless it has been placed somewhere else since
+    public void removeFrom(GameEntity entity, Location location) {
+        Chunk chunk = chunkOf(entity.getId());
+        if (chunk == null) {
+            return;
+        }
+        int slot = entity.getId() & CHUNK_MASK;
+        while (true) {
+            Placement placement = chunk.placements.get(slot);
+            if (placement == null || placement.location != location || chunk.placements.compareAndSet(slot, placement, null)) {
+                return;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        chunks = new Chunk[0];
+    }
+
+    private void set(GameEntity entity, Placement placement) {
+        int id = entity.getId();
+        // no action refers to it, so nothing ever looks it up
+        if (id < 0) {
+            return;
+        }
+        Chunk chunk = chunkOf(id);
+        if (chunk == null) {
+            chunk = addChunk(id >>> CHUNK_BITS);
+        }
+        chunk.placements.set(id & CHUNK_MASK, placement);
+    }
+
+    private Chunk chunkOf(int id) {
+        Chunk[] current = chunks;
+        int index = id >>> CHUNK_BITS;
+        return id < 0 || index >= current.length ? null : current[index];
+    }
+
+    private synchronized Chunk addChunk(int index) {
+        Chunk[] current = chunks;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        }
+        if (current[index] == null) {
+            current[index] = new Chunk();
+        }
+        chunks = current;
+        return current[index];
+    }
+
+    public static final class Placement {
+        private final GameEntity entity;
+        private final Location location;
+        private final Player holder;
+
+        private Placement(GameEntity entity, Location location, Player holder) {
+            this.entity = entity;
+            this.location = location;
+            this.holder = holder;
+        }
+
+        public GameEntity getEntity() {
+            return entity;
+        }
+
+        // the location the entity is in, or null when a player is carrying it
+        public Location getLocation() {
+            return location;
+        }
+
+        // the player carrying the entity, or null when it is in a location
+        public Player getHolder() {
+            return holder;
+        }
+    }
+}
@@ -9,6 +9,11 @@ public class GameAction {
     private List<String> consumed;
     private List<String> produced;
     private String narration;
+    // the symbol IDs of the entity lists, and the subjects as PresenceBits
+    private int[] subjectIds = new int[0];
+    private int[] consumedIds = new int[0];
+    private int[] producedIds = new int[0];
+    private long[] subjectBits = new long[0];
 
     public GameAction() {
         this.subjects = new ArrayList<>();
@@ -68,12 +73,41 @@ public class GameAction {
         return narration;
     }
 
+    // compiles the entity lists into symbol IDs, once they are final
+    void compile(SymbolTable symbols) {
+        this.subjectIds = subjects.stream().mapToInt(symbols::intern).toArray();
+        this.consumedIds = consumed.stream().mapToInt(symbols::intern).toArray();
+        this.producedIds = produced.stream().mapToInt(symbols::intern).toArray();
+        this.subjectBits = PresenceBits.of(subjectIds);
+    }
+
+    int[] getSubjectIds() {
+        return subjectIds;
+    }
+
+    int[] getConsumedIds() {
+        return consumedIds;
+    }
+
+    int[] getProducedIds() {
+        return producedIds;
+    }
+
+    long[] getSubjectBits() {
+        return subjectBits;
+    }
+
+
     public GameAction copy() {
         GameAction copy = new GameAction();
         copy.setNarration(narration);
         copy.setConsumed(consumed);
         copy.setProduced(produced);
         copy.setSubjects(subjects);
+        copy.subjectIds = subjectIds;
+        copy.consumedIds = consumedIds;
+        copy.producedIds = producedIds;
+        copy.subjectBits = subjectBits;
         return copy;
     }
 
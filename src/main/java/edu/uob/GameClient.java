@@ -1,11 +1,8 @@
 package edu.uob;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
 
 /**
 * This is the sample client for you to connect to your game server.
@@ -14,30 +11,35 @@ import java.net.Socket;
 */
 public final class GameClient {
 
-    private static final char END_OF_TRANSMISSION = 4;
-
     public static void main(String[] args) throws IOException {
         String username = args[0];
-        while (!Thread.interrupted()) handleNextCommand(username);
-    }
-
-    private static void handleNextCommand(String username) throws IOException {
-        System.out.print(username + ":> ");
         BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
-        String command = commandLine.readLine();
-        try (var socket = new Socket("localhost", 8888);
-        var socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
-            socketWriter.write(username + ": " + command + "\n");
-            socketWriter.flush();
-            String incomingMessage = socketReader.readLine();
-            if (incomingMessage == null) {
-                throw new IOException("Server disconnected (end-of-stream)");
+        // a second argument of "binary" talks to a nio server in length-prefixed frames
+        boolean binary = args.length > 1 && args[1].equals("binary");
+        try (GameConnection connection = new GameConnection("localhost", 8888, username, binary)) {
+            if (binary) {
+                // binary connections are also told what changes around the player
+                connection.subscribe();
             }
-            while (incomingMessage != null && !incomingMessage.contains("" + END_OF_TRANSMISSION + "")) {
-                System.out.println(incomingMessage);
-                incomingMessage = socketReader.readLine();
+            while (!Thread.interrupted()) {
+                if (!handleNextCommand(commandLine, connection)) {
+                    break;
+                }
             }
         }
     }
+
+    private static boolean handleNextCommand(BufferedReader commandLine, GameConnection connection) throws IOException {
+        System.out.print(connection.getUsername() + ":> ");
+        String command = commandLine.readLine();
+        if (command == null) {
+            return false;
+        }
+        String response = connection.send(command);
+        for (String event : connection.takeEvents()) {
+            System.out.print("[Event] " + event);
+        }
+        System.out.print(response);
+        return true;
+    }
 }
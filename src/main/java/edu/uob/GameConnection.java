@@ -0,0 +1,286 @@
+package edu.uob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reusable client connection to the game server.
+ *
+ * <p>The socket is kept open between commands. The blocking server closes every connection after
+ * one response, so a reused connection is checked before anything is written to it and opened
+ * again if the server has closed it. A command is never sent twice: once it has been written, a
+ * failing connection is reported to the caller, since the server may already have run it.
+ *
+ * <p>A binary connection speaks the {@link BinaryProtocol} instead of text lines, which only the
+ * non-blocking server understands.
+ */
+public final class GameConnection implements Closeable {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    // how long a reused connection is given to show it was closed, before the first command on it
+    private static final int PROBE_TIMEOUT = 10;
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final boolean binary;
+    private Socket socket;
+    // what both protocols read through, so a reused connection can be peeked at
+    private BufferedInputStream input;
+    private BufferedReader reader;
+    private BufferedWriter writer;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private final StringBuilder response = new StringBuilder();
+    // events pushed since the last call to takeEvents
+    private final List<String> events = new ArrayList<>();
+    private boolean subscribed;
+    // whether the server answered a second command on this connection, so it keeps connections open
+    private boolean keptOpen;
+
+    public GameConnection(String host, int port, String username) {
+        this(host, port, username, false);
+    }
+
+    public GameConnection(String host, int port, String username, boolean binary) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.binary = binary;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    // sends one command as this connection's player and waits for the whole response
+    public String send(String command) throws IOException {
+        boolean reused = open();
+        try {
+            String answer = exchange(command);
+            keptOpen |= reused;
+            return answer;
+        } catch (IOException e) {
+            // the command may have been run already, so it is never sent again
+            close();
+            throw e;
+        }
+    }
+
+    // connects, or connects again if the server closed the connection after the last response,
+    // returns whether the connection was reused
+    private boolean open() throws IOException {
+        if (socket != null && !keptOpen && isClosedByServer()) {
+            close();
+        }
+        if (socket != null) {
+            return true;
+        }
+        connect();
+        return false;
+    }
+
+    // peeks at the connection without consuming anything, it is closed once the end of the stream shows up
+    private boolean isClosedByServer() throws IOException {
+        // anything buffered means the server is still talking to us
+        if (binary ? in.available() > 0 : reader.ready()) {
+            return false;
+        }
+        int timeout = socket.getSoTimeout();
+        socket.setSoTimeout(PROBE_TIMEOUT);
+        input.mark(1);
+        try {
+            if (input.read() < 0) {
+                return true;
+            }
+            input.reset();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            // reset by the server
+            return true;
+        } finally {
+            socket.setSoTimeout(timeout);
+        }
+    }
+
+    /**
+     * Asks the server to push the changes of the player's location, which binary connections
+     * collect in between responses. They are lost if the connection has to be opened again.
+     */
+    public void subscribe() throws IOException {
+        if (!binary) {
+            throw new IllegalStateException("Only binary connections can subscribe");
+        }
+        open();
+        writeFrame(BinaryProtocol.SUBSCRIBE, "");
+        out.flush();
+        subscribed = true;
+    }
+
+    // the events received so far, in the order they were pushed
+    public List<String> takeEvents() throws IOException {
+        // collect any which arrived since the last response
+        while (subscribed && in.available() > 0) {
+            readFrame(true);
+        }
+        List<String> taken = new ArrayList<>(events);
+        events.clear();
+        return taken;
+    }
+
+    /**
+     * Sends several commands as this connection's player in one write, the server has to be in
+     * {@code nio} or {@code sessions} mode.
+     *
+     * @param commands The commands to send.
+     * @return The response to each command, in the same order.
+     */
+    public List<String> sendBatch(List<String> commands) throws IOException {
+        boolean reused = open();
+        try {
+            // binary frames are answered in order anyway, so they need no header
+            if (binary) {
+                for (String command : commands) {
+                    writeFrame(BinaryProtocol.COMMAND, command);
+                }
+                out.flush();
+            } else {
+                writer.write(CommandHandler.BATCH_HEADER + commands.size() + "\n");
+                for (String command : commands) {
+                    writer.write(username + ": " + command + "\n");
+                }
+                writer.flush();
+            }
+            List<String> responses = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                responses.add(binary ? readFrame() : readResponse());
+            }
+            keptOpen |= reused;
+            return responses;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private String exchange(String command) throws IOException {
+        if (binary) {
+            writeFrame(BinaryProtocol.COMMAND, command);
+            out.flush();
+            return readFrame();
+        }
+        writer.write(username + ": " + command + "\n");
+        writer.flush();
+        return readResponse();
+    }
+
+    // reads lines up to the next END_OF_TRANSMISSION line
+    private String readResponse() throws IOException {
+        response.setLength(0);
+        String incomingMessage = reader.readLine();
+        if (incomingMessage == null) {
+            throw new IOException("Server disconnected (end-of-stream)");
+        }
+        while (!incomingMessage.contains("" + END_OF_TRANSMISSION + "")) {
+            response.append(incomingMessage).append("\n");
+            incomingMessage = reader.readLine();
+            if (incomingMessage == null) {
+                throw new IOException("Server disconnected (end-of-stream)");
+            }
+        }
+        return response.toString();
+    }
+
+    private void writeFrame(byte opcode, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(1 + bytes.length);
+        out.writeByte(opcode);
+        out.write(bytes);
+    }
+
+    // reads the payload of the next response or error, keeping the events in front of it
+    private String readFrame() throws IOException {
+        String payload = readFrame(false);
+        while (payload == null) {
+            payload = readFrame(false);
+        }
+        return payload;
+    }
+
+    // the payload of the next frame, or null if it was an event
+    private String readFrame(boolean eventsOnly) throws IOException {
+        int length = in.readInt();
+        if (length < 1) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte opcode = in.readByte();
+        byte[] payload = new byte[length - 1];
+        in.readFully(payload);
+        String text = new String(payload, StandardCharsets.UTF_8);
+        if (opcode == BinaryProtocol.EVENT) {
+            events.add(text);
+            return null;
+        }
+        if (eventsOnly) {
+            throw new IOException("Unexpected frame without a command");
+        }
+        return text;
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        input = new BufferedInputStream(socket.getInputStream());
+        if (binary) {
+            in = new DataInputStream(input);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.write(BinaryProtocol.HELLO);
+            writeFrame(BinaryProtocol.LOGIN, username);
+            out.flush();
+            byte[] hello = new byte[BinaryProtocol.HELLO.length];
+            in.readFully(hello);
+            if (!Arrays.equals(hello, BinaryProtocol.HELLO)) {
+                close();
+                throw new IOException("The server does not speak the binary protocol");
+            }
+            return;
+        }
+        reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        socket = null;
+        input = null;
+        reader = null;
+        writer = null;
+        in = null;
+        out = null;
+        subscribed = false;
+        keptOpen = false;
+    }
+}
@@ -0,0 +1,172 @@
+package edu.uob;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of a game which never change while it is played: location and entity definitions, the
+ * paths between locations, the actions and the compiled trigger matcher and tokenizer.
+ *
+ * <p>It is built once per entities and actions file and can then start any number of independent
+ * worlds (see {@link WorldHost}). Every world shares the description strings, the actions and the
+ * initial paths of the content, and only allocates the locations and entities it moves around.
+ */
+public final class GameContent {
+
+    private final List<WorldBundle.LocationDefinition> locations;
+    private final String startLocation;
+    // every action, keyed by trigger, never changed once built
+    private final HashMap<String, HashSet<GameAction>> actions = new HashMap<>();
+    private final TriggerMatcher triggerMatcher;
+    private final CommandTokenizer tokenizer;
+    // IDs for the names the actions refer to, shared by every world and never grown by one
+    private final SymbolTable symbols = new SymbolTable();
+    private final int healthId;
+    // the actions of each keyphrase, indexed like the keyphrases of the trigger matcher
+    private final GameAction[][] keyphraseActions;
+    // the paths each location starts with, name to description of the other end
+    private final Map<String, Map<String, String>> to = new HashMap<>();
+    private final Map<String, Map<String, String>> from = new HashMap<>();
+
+    public GameContent(WorldBundle bundle) {
+        this(bundle, false);
+    }
+
+    /**
+     * @param bundle The parsed configuration files.
+     * @param paged Whether the locations live in a {@link PagedWorld} instead of the bundle, so
+     *     their names aren't known up front.
+     */
+    GameContent(WorldBundle bundle, boolean paged) {
+        this.locations = Collections.unmodifiableList(bundle.getLocations());
+        // the first location is the default location
+        this.startLocation = locations.isEmpty() ? null : locations.get(0).getName();
+
+        Map<String, WorldBundle.LocationDefinition> byName = new HashMap<>();
+        for (WorldBundle.LocationDefinition definition : locations) {
+            byName.put(definition.getName(), definition);
+        }
+        // only names the actions refer to get an ID, see compile below
+        this.healthId = symbols.intern("health");
+        for (String[] path : bundle.getPaths()) {
+            WorldBundle.LocationDefinition source = byName.get(path[0]);
+            WorldBundle.LocationDefinition target = byName.get(path[1]);
+            // if both names are correct
+            if (source != null && target != null) {
+                to.computeIfAbsent(source.getName(), key -> new LinkedHashMap<>()).putIfAbsent(target.getName(), target.getDescription());
+                from.computeIfAbsent(target.getName(), key -> new LinkedHashMap<>()).putIfAbsent(source.getName(), source.getDescription());
+            }
+        }
+        to.replaceAll((name, paths) -> Collections.unmodifiableMap(paths));
+        from.replaceAll((name, paths) -> Collections.unmodifiableMap(paths));
+
+        // one action is shared by all of its keyphrases
+        for (WorldBundle.ActionDefinition definition : bundle.getActions()) {
+            GameAction action = new GameAction();
+            action.setSubjects(Collections.unmodifiableList(definition.getSubjects()));
+            action.setConsumed(Collections.unmodifiableList(definition.getConsumed()));
+            action.setProduced(Collections.unmodifiableList(definition.getProduced()));
+            action.setNarration(definition.getNarration());
+            // compiled once, so running the action never compares names
+            action.compile(symbols);
+            for (String trigger : definition.getTriggers()) {
+                // in file order, so a replayed journal picks the same action again
+                actions.computeIfAbsent(trigger, key -> new LinkedHashSet<>()).add(action);
+            }
+        }
+
+        // compile every keyphrase into a single automaton
+        this.triggerMatcher = new TriggerMatcher(actions.keySet());
+        this.keyphraseActions = new GameAction[actions.size()][];
+        for (int k = 0; k < keyphraseActions.length; k++) {
+            keyphraseActions[k] = actions.get(triggerMatcher.keyphrase(k)).toArray(new GameAction[0]);
+        }
+
+        // every word a command can usefully contain
+        Set<String> vocabulary = new HashSet<>();
+        for (WorldBundle.LocationDefinition definition : locations) {
+            vocabulary.add(definition.getName());
+            definition.getArtefacts().forEach(artefact -> vocabulary.add(artefact.getName()));
+            definition.getFurniture().forEach(furniture -> vocabulary.add(furniture.getName()));
+            definition.getCharacters().forEach(character -> vocabulary.add(character.getName()));
+        }
+        for (String trigger : actions.keySet()) {
+            vocabulary.addAll(Arrays.asList(trigger.split(" ")));
+        }
+        if (paged) {
+            // the names of a paged world aren't known up front, only the ones actions refer to
+            for (HashSet<GameAction> actionSet : actions.values()) {
+                for (GameAction action : actionSet) {
+                    vocabulary.addAll(action.getSubjects());
+                    vocabulary.addAll(action.getConsumed());
+                    vocabulary.addAll(action.getProduced());
+                }
+            }
+        }
+        this.tokenizer = new CommandTokenizer(vocabulary, symbols);
+    }
+
+    public static GameContent parse(File entitiesFile, File actionsFile) {
+        return new GameContent(WorldBundle.parse(entitiesFile, actionsFile));
+    }
+
+    // a fresh copy of every location with the entities it starts with, in the order of the entities file
+    Map<String, Location> newLocations() {
+        Map<String, Location> built = new LinkedHashMap<>();
+        for (WorldBundle.LocationDefinition definition : locations) {
+            Location location = new Location(definition.getName(), definition.getDescription(),
+                    to.getOrDefault(definition.getName(), Collections.emptyMap()),
+                    from.getOrDefault(definition.getName(), Collections.emptyMap()));
+            for (WorldBundle.EntityDefinition character : definition.getCharacters()) {
+                location.addCharacter(symbols.tag(new Character(character.getName(), character.getDescription())));
+            }
+            for (WorldBundle.EntityDefinition artefact : definition.getArtefacts()) {
+                location.addArtefact(symbols.tag(new Artefact(artefact.getName(), artefact.getDescription())));
+            }
+            for (WorldBundle.EntityDefinition furniture : definition.getFurniture()) {
+                location.addFurniture(symbols.tag(new Furniture(furniture.getName(), furniture.getDescription())));
+            }
+            built.put(location.getName(), location);
+        }
+        return built;
+    }
+
+    // the first location of the entities file, null for a paged world
+    String getStartLocation() {
+        return startLocation;
+    }
+
+    HashMap<String, HashSet<GameAction>> getActions() {
+        return actions;
+    }
+
+    // the actions of a keyphrase found by the trigger matcher, in file order
+    GameAction[] getKeyphraseActions(int keyphrase) {
+        return keyphraseActions[keyphrase];
+    }
+
+    // the symbol ID of "health", which actions consume and produce without it being an entity
+    int getHealthId() {
+        return healthId;
+    }
+
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    TriggerMatcher getTriggerMatcher() {
+        return triggerMatcher;
+    }
+
+    CommandTokenizer getTokenizer() {
+        return tokenizer;
+    }
+}
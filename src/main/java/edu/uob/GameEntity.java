@@ -4,6 +4,8 @@ public abstract class GameEntity
 {
     private String name;
     private String description;
+    // see SymbolTable, -1 for names actions never refer to
+    private int id = -1;
 
     public GameEntity(String name, String description)
     {
@@ -21,6 +23,16 @@ public abstract class GameEntity
         return description;
     }
 
+    public int getId()
+    {
+        return id;
+    }
+
+    void setId(int id)
+    {
+        this.id = id;
+    }
+
     @Override
     public String toString() {
         return  name + " (" + description + ")";
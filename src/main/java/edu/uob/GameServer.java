@@ -3,33 +3,113 @@ package edu.uob;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.util.*;
-
-import com.alexmerz.graphviz.ParseException;
-import com.alexmerz.graphviz.Parser;
-import com.alexmerz.graphviz.objects.Edge;
-import com.alexmerz.graphviz.objects.Graph;
-import com.alexmerz.graphviz.objects.Node;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
 import javax.swing.*;
-import javax.xml.parsers.*;
-
-import org.w3c.dom.*;
 
-public final class GameServer {
-
-    private Map<String, Location> clusters_map;
-    private Map<String, Player> players_map;
-    private HashMap<String, HashSet<GameAction>> actions = new HashMap<>();
+public final class GameServer implements CommandHandler {
+
+    private final Map<String, Location> clusters_map;
+    // for worlds too big to load up front, null when every location is in clusters_map
+    private final PagedWorld paged_world;
+    private final Map<String, Player> players_map;
+    // the sessions which want the changes of their player's location pushed, by player name
+    private final Map<String, LocationFeed.Subscriber> subscribers_map = new ConcurrentHashMap<>();
+    // e.g. -Dstag.push.interval=100 to push them every 100ms
+    private final LocationFeed location_feed = new LocationFeed(Long.getLong("stag.push.interval", 50));
+    private final CopyOnWriteArrayList<String> unlocked_locations = new CopyOnWriteArrayList<>();
+    private final EntityIndex entity_index = new EntityIndex();
+    // players and locations are guarded by separate lock stripes, see LockStripes
+    private final LockStripes player_locks = new LockStripes(64);
+    private final LockStripes location_locks = new LockStripes(256);
+    // shared with every other world played from the same content
+    private final HashMap<String, HashSet<GameAction>> actions;
+    private final GameContent content;
+    private final SymbolTable symbols;
+    private final int health_id;
+    // may be shared with other worlds, see WorldHost
+    private final ServerMetrics metrics;
+    // the locations of a loaded world which actions refer to, by symbol ID, null for a paged world
+    private final Location[] locations_by_id;
+    private final TriggerMatcher triggerMatcher;
+    private final CommandTokenizer tokenizer;
     private String startLocation;
+    // set once the journal has been replayed, commands which change the game are then written to it
+    private volatile CommandJournal journal;
+    // the last journal record reflected in the game, from the snapshot it was restored from
+    private long journal_sequence;
     private static final char END_OF_TRANSMISSION = 4;
+    private static final String RESPONSE_TRAILER = "\n" + END_OF_TRANSMISSION + "\n";
+    private static final ThreadLocal<CommandTokens> COMMAND_TOKENS = ThreadLocal.withInitial(CommandTokens::new);
+    // the metrics type of the command being handled
+    private static final ThreadLocal<int[]> COMMAND_TYPE = ThreadLocal.withInitial(() -> new int[1]);
+    // collects rendered responses for callers which want a String
+    private static final ThreadLocal<StringBuilder> RESPONSE_TEXT = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<ResponseSink> RESPONSE_SINK = ThreadLocal.withInitial(() -> ResponseSink.of(RESPONSE_TEXT.get()));
 
     public static void main(String[] args) throws IOException {
         File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
         File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
-        GameServer server = new GameServer(entitiesFile, actionsFile);
-        server.blockingListenOn(8888);
+        // e.g. -Dstag.bundle=world.bundle to start from a compiled world bundle
+        String bundleFile = System.getProperty("stag.bundle");
+        // e.g. -Dstag.world=world to page a partitioned world in and out
+        String worldDirectory = System.getProperty("stag.world");
+        GameServer server;
+        if (worldDirectory != null) {
+            PagedWorld world = PagedWorld.open(Paths.get(worldDirectory), Integer.getInteger("stag.world.budget", 100000));
+            server = new GameServer(actionsFile, world);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    world.flush();
+                } catch (IOException e) {
+                    System.out.println("Failed to write back the world: " + e.getMessage());
+                }
+            }));
+        } else if (bundleFile != null) {
+            server = new GameServer(entitiesFile, actionsFile, new File(bundleFile));
+        } else {
+            server = new GameServer(entitiesFile, actionsFile);
+        }
+        // e.g. -Dstag.snapshot=world.snapshot to keep the game across restarts
+        String snapshotFile = System.getProperty("stag.snapshot");
+        if (snapshotFile != null && new File(snapshotFile).exists()) {
+            server.restoreSnapshot(new File(snapshotFile));
+            System.out.println("Restored snapshot " + snapshotFile);
+        }
+        // e.g. -Dstag.journal=journal to also keep every command since the last snapshot
+        String journalDirectory = System.getProperty("stag.journal");
+        if (journalDirectory != null) {
+            server.openJournal(new File(journalDirectory));
+        }
+        if (snapshotFile != null) {
+            server.scheduleSnapshots(new File(snapshotFile), Long.getLong("stag.snapshot.interval", 60));
+        }
+        try {
+            server.getMetrics().register(WorldHost.DEFAULT_WORLD);
+        } catch (JMException e) {
+            System.out.println("Failed to register the metrics: " + e.getMessage());
+        }
+        // e.g. -Dstag.metrics.interval=60 to print the metrics every minute
+        Long metricsInterval = Long.getLong("stag.metrics.interval");
+        if (metricsInterval != null) {
+            server.getMetrics().scheduleDump(metricsInterval);
+        }
+        if (args.length > 0 && args[0].equals("nio")) {
+            server.nonBlockingListenOn(8888);
+        } else if (args.length > 0 && args[0].equals("sessions")) {
+            server.sessionListenOn(8888);
+        } else {
+            server.blockingListenOn(8888);
+        }
     }
 
     /**
@@ -40,212 +120,140 @@ public final class GameServer {
     * @param actionsFile The game configuration file containing all game actions to use in your game
     */
     public GameServer(File entitiesFile, File actionsFile) {
+        this(WorldBundle.parse(entitiesFile, actionsFile));
+    }
 
-        this.clusters_map = new HashMap<>();
-        this.players_map = new HashMap<>();
+    /**
+    * Instanciates a new server instance from a compiled world bundle if it is up to date, otherwise
+    * from the configuration files it was compiled from
+    *
+    * @param entitiesFile The game configuration file containing all game entities to use in your game
+    * @param actionsFile The game configuration file containing all game actions to use in your game
+    * @param bundleFile The world bundle compiled from both files, which doesn't have to exist
+    * @throws IOException If the world bundle exists but can't be read
+    */
+    public GameServer(File entitiesFile, File actionsFile, File bundleFile) throws IOException {
+        this(WorldBundle.load(entitiesFile, actionsFile, bundleFile));
+    }
 
-        // parsing the entities file
-        FileReader fileReader = null;
-        try {
-            // entities file
-            fileReader = new FileReader(entitiesFile);
-
-            // parse
-            Parser p = new Parser();
-            p.parse(fileReader);
-
-            Graph layout = p.getGraphs().get(0);
-
-            // locations
-            Graph locations = layout.getSubgraphs().get(0);
-            // paths
-            ArrayList<Edge> paths = layout.getSubgraphs().get(1).getEdges();
-
-            // get clusters (locations)
-            ArrayList<Graph> clusters = locations.getSubgraphs();
-            // iterate one by one
-            for (Graph cluster : clusters) {
-                Node locationDetails = cluster.getNodes(true).get(0);
-
-                // location name
-                String locationName = locationDetails.getId().getId();
-                // description
-                String locationDescription = locationDetails.getAttribute("description");
-
-                // if this is the first location
-                // mark it as the default location
-                Location location = new Location(locationName, locationDescription);
-                if (startLocation == null) {
-                    startLocation = locationName;
-                }
-
-                // finding sub-graphs for characters, artefacts, and furniture
-                ArrayList<Graph> entities = cluster.getSubgraphs();
-                Graph characters = null;
-                Graph artefacts = null;
-                Graph furnitures = null;
-                for (Graph entity : entities) {
-                    switch (entity.getId().getId()) {
-                        // characters sub-graph
-                        case "characters": {
-                            characters = entity;
-                            break;
-                        }
-                        // artefacts sub-graph
-                        case "artefacts": {
-                            artefacts = entity;
-                            break;
-                        }
-                        // furniture sub-graph
-                        case "furniture": {
-                            furnitures = entity;
-                            break;
-                        }
-                    }
-                }
+    /**
+    * Instanciates a new server instance for a world which is paged in and out of memory as it is played
+    *
+    * @param actionsFile The game configuration file containing all game actions to use in your game
+    * @param world The locations of the game, see PagedWorld.partition
+    */
+    public GameServer(File actionsFile, PagedWorld world) {
+        this(new GameContent(WorldBundle.parseActions(actionsFile), true), world, null);
+    }
 
+    GameServer(WorldBundle bundle) {
+        this(new GameContent(bundle));
+    }
 
-                // extract data from characters sub-graph
-                if (characters != null && characters.getNodes(true).size() != 0) {
-                    for (int i = 0; i < characters.getNodes(true).size(); i++) {
-                        Node characterDetails = characters.getNodes(true).get(i);
-                        // character name
-                        String characterName = characterDetails.getId().getId();
-                        // description
-                        String characterDescription = characterDetails.getAttribute("description");
-                        // create new character instance
-                        Character character = new Character(characterName, characterDescription);
-                        // add to the location
-                        location.addCharacter(character);
-                    }
-                }
+    /**
+    * Instanciates a new server instance for one more world played from content which is already
+    * loaded, sharing everything that never changes with the other worlds played from it
+    *
+    * @param content The parsed configuration files, see WorldHost
+    */
+    public GameServer(GameContent content) {
+        this(content, null, null);
+    }
 
-                // extract data from artefacts sub-graph
-                if (artefacts != null && artefacts.getNodes(true).size() != 0) {
-                    for (int i = 0; i < artefacts.getNodes(true).size(); i++) {
-                        Node artefactDetails = artefacts.getNodes(true).get(i);
-                        String artefactName = artefactDetails.getId().getId();
-                        String artefactDescription = artefactDetails.getAttribute("description");
-                        // create new artefact instance
-                        Artefact artefact = new Artefact(artefactName, artefactDescription);
-                        // add to the location
-                        location.addArtefact(artefact);
-                    }
-                }
+    /**
+    * Instanciates a new server instance for one more world played from content which is already
+    * loaded, recording its metrics together with other worlds
+    *
+    * @param content The parsed configuration files, see WorldHost
+    * @param metrics The metrics to record to, created for this content
+    */
+    public GameServer(GameContent content, ServerMetrics metrics) {
+        this(content, null, metrics);
+    }
 
-                // extract data from furniture sub-graph
-                if (furnitures != null && furnitures.getNodes(true).size() != 0) {
-                    for (int i = 0; i < furnitures.getNodes(true).size(); i++) {
-                        Node furnitureDetails = furnitures.getNodes(true).get(i);
-                        String furnitureName = furnitureDetails.getId().getId();
-                        String furnitureDescription = furnitureDetails.getAttribute("description");
-                        // create new furniture instance
-                        Furniture furniture = new Furniture(furnitureName, furnitureDescription);
-                        // add to the location
-                        location.addFurniture(furniture);
-                    }
+    private GameServer(GameContent content, PagedWorld world, ServerMetrics metrics) {
+        this.paged_world = world;
+        this.metrics = metrics != null ? metrics : new ServerMetrics(content);
+        this.players_map = new ConcurrentHashMap<>();
+        this.content = content;
+        this.actions = content.getActions();
+        this.symbols = content.getSymbols();
+        this.health_id = content.getHealthId();
+        this.triggerMatcher = content.getTriggerMatcher();
+        this.tokenizer = content.getTokenizer();
+        if (world != null) {
+            this.clusters_map = new HashMap<>();
+            startLocation = world.getStartLocation();
+            // players saved with the world come back where they were, inventories and all, and so
+            // do the locations actions unlocked
+            int restored = world.attach(entity_index, location_locks, content.getSymbols(), players_map, unlocked_locations).size();
+            this.metrics.playersJoined(restored);
+            world.get(startLocation);
+            this.locations_by_id = null;
+        } else {
+            this.clusters_map = content.newLocations();
+            startLocation = content.getStartLocation();
+            this.locations_by_id = new Location[symbols.size()];
+            for (Location location : clusters_map.values()) {
+                // only locations an action produces are looked up by ID
+                int id = symbols.idOf(location.getName());
+                if (id >= 0) {
+                    locations_by_id[id] = location;
                 }
+            }
+            // a paged world indexes its regions as it loads them
+            indexEntities();
+        }
+    }
 
-                // add the location to the map
-                clusters_map.put(location.getName(), location);
+    private Location locationNamed(String name) {
+        return paged_world == null ? clusters_map.get(name) : paged_world.get(name);
+    }
 
-            }
+    // whether a location exists, without loading it
+    private boolean isLocation(String name) {
+        return paged_world == null ? clusters_map.containsKey(name) : paged_world.contains(name);
+    }
 
-            // for each path
-            for (Edge path : paths) {
-                // from
-                Node fromLocation = path.getSource().getNode();
-                String fromName = fromLocation.getId().getId();
-                // to
-                Node toLocation = path.getTarget().getNode();
-                String toName = toLocation.getId().getId();
+    private Location locationWithId(int id) {
+        if (paged_world != null) {
+            return paged_world.get(symbols.nameOf(id));
+        }
+        return id < locations_by_id.length ? locations_by_id[id] : null;
+    }
 
-                // if both names are correct
-                if (clusters_map.containsKey(fromName) && clusters_map.containsKey(toName)) {
-                    // find locations form the map
-                    Location from = clusters_map.get(fromName);
-                    Location to = clusters_map.get(toName);
-                    // add paths
-                    from.addTo(to);
-                    to.addFrom(from);
-                    // save in the map
-                    clusters_map.put(fromName, from);
-                    clusters_map.put(toName, to);
-                }
-            }
-        } catch (FileNotFoundException e) {
-        } catch (ParseException e) {
+    private boolean isLocation(int id) {
+        if (paged_world != null) {
+            return paged_world.contains(symbols.nameOf(id));
         }
+        return id < locations_by_id.length && locations_by_id[id] != null;
+    }
 
+    // whether a location looked up before locking it hasn't been paged out since
+    private boolean isResident(Location location) {
+        return paged_world == null || paged_world.isResident(location);
+    }
 
-        // parsing the actions file
-        try {
-            // parsing the XML actions config
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(actionsFile);
-
-            // get actions list
-            NodeList actionList = document.getElementsByTagName("action");
-
-            for (int i = 0; i < actionList.getLength(); i++) {
-
-                // create a new action instance
-                GameAction action = new GameAction();
-
-                // action element
-                Element actionEle = (Element) actionList.item(i);
-
-                // Parse <subjects> tag
-                Element subjectsTag = (Element) actionEle.getElementsByTagName("subjects").item(0);
-                NodeList subjects = subjectsTag.getElementsByTagName("entity");
-                for (int j = 0; j < subjects.getLength(); j++) {
-                    String subject = subjects.item(j).getTextContent();
-                    action.getSubjects().add(subject.replaceAll("\\s", ""));
-                }
-
-                // Parse <consumed> tag
-                Element consumedTag = (Element) actionEle.getElementsByTagName("consumed").item(0);
-                NodeList consumed = consumedTag.getElementsByTagName("entity");
-                for (int j = 0; j < consumed.getLength(); j++) {
-                    String consumedEntity = consumed.item(j).getTextContent();
-                    action.getConsumed().add(consumedEntity.replaceAll("\\s", ""));
-                }
-
-                // Parse <produced> tag
-                Element producedTag = (Element) actionEle.getElementsByTagName("produced").item(0);
-                NodeList produced = producedTag.getElementsByTagName("entity");
-                for (int j = 0; j < produced.getLength(); j++) {
-                    String producedEntity = produced.item(j).getTextContent();
-                    action.getProduced().add(producedEntity.replaceAll("\\s", ""));
-                }
-
-                // Parse <narration> tag
-                String narration = actionEle.getElementsByTagName("narration").item(0).getTextContent();
-                action.setNarration(narration);
-
-
-                // Parse <triggers> tag
-                Element triggersTag = (Element) actionEle.getElementsByTagName("triggers").item(0);
-                NodeList triggers = triggersTag.getElementsByTagName("keyphrase");
-                for (int j = 0; j < triggers.getLength(); j++) {
-                    String trigger = triggers.item(j).getTextContent().replaceAll("\\s", "");
-                    GameAction temp = action.copy();
-                    temp.setTrigger(trigger);
-                    if (this.actions.containsKey(trigger)) {
-                        // Key exists
-                        HashSet<GameAction> actionSet = actions.get(trigger);
-                        actionSet.add(temp);
-                    } else {
-                        // Key doesn't exist
-                        HashSet<GameAction> newActionSet = new HashSet<>();
-                        newActionSet.add(temp);
-                        this.actions.put(trigger, newActionSet);
-                    }
+    // the canonical word of a token, or its text when the word isn't in the vocabulary
+    private static String nameAt(CommandTokens tokens, int token) {
+        String word = tokens.word(token);
+        return word != null ? word : tokens.subSequence(tokens.start(token), tokens.end(token)).toString();
+    }
+
+    private void indexEntities() {
+        entity_index.clear();
+        for (Location location : clusters_map.values()) {
+            location.getArtefacts().forEach(artefact -> entity_index.placeIn(artefact, location));
+            location.getFurniture().forEach(furniture -> entity_index.placeIn(furniture, location));
+            for (Character character : location.getCharacters()) {
+                // players are looked up by name, so one named like an entity never shadows it
+                if (!(character instanceof Player)) {
+                    entity_index.placeIn(character, location);
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+        for (Player player : players_map.values()) {
+            player.getInventory().forEach(artefact -> entity_index.heldBy(artefact, player));
         }
     }
 
@@ -256,371 +264,703 @@ public final class GameServer {
     * @param command The incoming command to be processed
     */
     public String handleCommand(String command) {
+        long started = System.nanoTime();
+        StringBuilder text = RESPONSE_TEXT.get();
+        text.setLength(0);
+        String response = handleCommand(tokenize(command), started, RESPONSE_SINK.get(), null);
+        return response != null ? response : text.toString();
+    }
 
-        // output
-        String output = "[Error]: Invalid action, please try again\n"; // initialize with error message
+    /**
+    * Handles a command, rendering its response straight into the sink.
+    *
+    * @param command The incoming command to be processed
+    * @param sink Where the response goes
+    */
+    @Override
+    public void handleCommand(String command, ResponseSink sink) {
+        long started = System.nanoTime();
+        respond(tokenize(command), started, sink, null);
+    }
 
-        String[] temp = command.toLowerCase().split(": ");
-        String userName = temp[0];
+    /**
+    * Handles a command without waiting for its changes to be on disk, for servers whose thread
+    * mustn't block. The response is rendered into the sink straight away.
+    *
+    * @param command The incoming command to be processed
+    * @param sink Where the response goes
+    * @param saved Called back, from the journal's flusher thread if it has to wait, once the response may be sent
+    */
+    @Override
+    public void handleCommand(String command, ResponseSink sink, Saved saved) {
+        long started = System.nanoTime();
+        respond(tokenize(command), started, sink, saved);
+    }
+
+    /**
+    * Handles a command received over the binary protocol, tokenizing it straight from its bytes.
+    *
+    * @param userName The player the connection logged in as
+    * @param command The UTF-8 bytes of the command, from its position to its limit
+    * @param sink Where the response goes
+    */
+    @Override
+    public void handleCommand(String userName, ByteBuffer command, ResponseSink sink) {
+        long started = System.nanoTime();
+        CommandTokens tokens = COMMAND_TOKENS.get();
+        CommandEvents.Parse parse = new CommandEvents.Parse();
+        parse.begin();
+        tokenizer.tokenize(userName, command, tokens);
+        CommandEvents.commit(parse, tokens.getUserName(), null, null);
+        respond(tokens, started, sink, null);
+    }
 
-        Player player = null; // to store the player
-        Location location = null; // to store the player's current location
+    // the same without waiting for the changes to be on disk
+    @Override
+    public void handleCommand(String userName, ByteBuffer command, ResponseSink sink, Saved saved) {
+        long started = System.nanoTime();
+        CommandTokens tokens = COMMAND_TOKENS.get();
+        CommandEvents.Parse parse = new CommandEvents.Parse();
+        parse.begin();
+        tokenizer.tokenize(userName, command, tokens);
+        CommandEvents.commit(parse, tokens.getUserName(), null, null);
+        respond(tokens, started, sink, saved);
+    }
 
-        // If player already exists
-        if (players_map.containsKey(userName)) {
-            player = players_map.get(userName);
-            location = clusters_map.get(player.getLocation());
+    private void respond(CommandTokens tokens, long started, ResponseSink sink, Saved saved) {
+        // a response rendered before its wait for the journal failed has to be taken back, so it is rendered aside first
+        if (saved == null && journal != null) {
+            StringBuilder text = RESPONSE_TEXT.get();
+            text.setLength(0);
+            String response = handleCommand(tokens, started, RESPONSE_SINK.get(), null);
+            sink.append(response != null ? response : text);
+            return;
         }
-        // If player does not exist
-        else {
-            player = new Player(userName);
-            player.setLocation(startLocation);
-            location = clusters_map.get(startLocation);
-            location.addCharacter(player);
+        String response = handleCommand(tokens, started, sink, saved);
+        if (response != null) {
+            sink.append(response);
+        }
+    }
+
+    // returns the response, or null when it was rendered into the sink, waits for it to be durable unless saved is given
+    private String handleCommand(CommandTokens tokens, long started, ResponseSink sink, Saved saved) {
+        int[] type = COMMAND_TYPE.get();
 
-            players_map.put(userName, player);
-            clusters_map.put(startLocation, location);
+        // the player stripe is held for the whole command, it is always taken before any location stripe
+        ReentrantLock playerLock = player_locks.lockFor(tokens.getUserName());
+        String response;
+        playerLock.lock();
+        try {
+            response = handleTokens(tokens, type, 0, sink, saved == null);
+        } finally {
+            playerLock.unlock();
+        }
+        if (paged_world != null) {
+            paged_world.evictColdRegions();
         }
 
+        if (saved != null) {
+            int commandType = type[0];
+            String reported = response;
+            whenDurable(durable -> {
+                metrics.record(commandType, System.nanoTime() - started, durable ? reported : SAVE_FAILED);
+                saved.done(durable);
+            });
+            return response;
+        }
+
+        // the response only goes out once every change it could show is on disk, even if it changed nothing itself,
+        // callers replace a response rendered into the sink with the one returned
+        if (!awaitDurable()) {
+            response = SAVE_FAILED;
+        }
+        metrics.record(type[0], System.nanoTime() - started, response);
+        return response;
+    }
+
+    /**
+    * Handles several commands in order, keeping the player stripe locked across consecutive
+    * commands of the same player instead of taking it again for each of them. The changes of the
+    * whole batch are made durable together before any response is returned.
+    *
+    * @param commands The incoming commands, in the order they were sent
+    * @return The response to each command, in the same order
+    */
+    @Override
+    public List<String> handleBatch(List<String> commands) {
+        return handleBatch(commands, null, true);
+    }
+
+    // the same without waiting for the changes of the batch to be on disk
+    @Override
+    public List<String> handleBatch(List<String> commands, Saved saved) {
+        return handleBatch(commands, saved, false);
+    }
+
+    private List<String> handleBatch(List<String> commands, Saved saved, boolean await) {
+        String[] responses = new String[commands.size()];
+        int[] types = new int[commands.size()];
+        long[] started = new long[commands.size()];
+        ReentrantLock held = null;
+        try {
+            for (int i = 0; i < responses.length; i++) {
+                started[i] = System.nanoTime();
+                CommandTokens tokens = tokenize(commands.get(i));
+                ReentrantLock playerLock = player_locks.lockFor(tokens.getUserName());
+                // still only one player stripe at a time, so the lock order is the same as for single commands
+                if (playerLock != held) {
+                    if (held != null) {
+                        held.unlock();
+                        held = null;
+                    }
+                    playerLock.lock();
+                    held = playerLock;
+                }
+                StringBuilder text = RESPONSE_TEXT.get();
+                text.setLength(0);
+                String response = handleTokens(tokens, types, i, RESPONSE_SINK.get(), await);
+                responses[i] = response != null ? response : text.toString();
+            }
+        } finally {
+            if (held != null) {
+                held.unlock();
+            }
+        }
+        if (paged_world != null) {
+            paged_world.evictColdRegions();
+        }
+
+        if (!await) {
+            whenDurable(durable -> {
+                for (int i = 0; i < responses.length; i++) {
+                    metrics.record(types[i], System.nanoTime() - started[i], durable ? responses[i] : SAVE_FAILED);
+                }
+                saved.done(durable);
+            });
+            return Arrays.asList(responses);
+        }
+
+        // one wait covers every record of the batch, if it fails none of them can be reported as done
+        boolean durable = awaitDurable();
+        for (int i = 0; i < responses.length; i++) {
+            if (!durable) {
+                responses[i] = SAVE_FAILED;
+            }
+            metrics.record(types[i], System.nanoTime() - started[i], responses[i]);
+        }
+        return Arrays.asList(responses);
+    }
+
+    // fills the thread's reusable token buffer
+    private CommandTokens tokenize(String command) {
+        CommandTokens tokens = COMMAND_TOKENS.get();
+        CommandEvents.Parse parse = new CommandEvents.Parse();
+        parse.begin();
+        tokenizer.tokenize(command, tokens);
+        CommandEvents.commit(parse, tokens.getUserName(), null, null);
+        return tokens;
+    }
+
+    // handles a tokenized command with the player's stripe held, storing its metrics type in types[index],
+    // returns the response or null when it was rendered into the sink
+    private String handleTokens(CommandTokens tokens, int[] types, int index, ResponseSink sink, boolean awaitJoin) {
+        String userName = tokens.getUserName();
+        CommandEvents.PlayerLookup lookup = new CommandEvents.PlayerLookup();
+        lookup.begin();
+        Player player = players_map.get(userName);
+        // If player does not exist
+        if (player == null) {
+            player = createPlayer(userName);
+            // made durable right away, so a response rendered into the sink never reports an unsaved join,
+            // callers which don't wait replace the whole response if it can't be saved
+            if (awaitJoin && !awaitDurable()) {
+                return SAVE_FAILED;
+            }
+        }
+        // only the player's own commands move it, so this can't change under us
+        Location location = locationNamed(player.getLocation());
+        CommandEvents.commit(lookup, userName, null, player.getLocation());
+
         // Basic actions
-        boolean basicAction = Arrays.stream(new String[]{"inventory", "inv", "get", "take", "drop", "goto", "look", "health"}).anyMatch(temp[1]::contains);
+        if (tokens.hasAny(CommandTokenizer.BASIC_COMMAND)) {
+            types[index] = metrics.basicType(tokens.size() == 0 ? null : tokens.word(0));
+            return handleBasicAction(tokens, player, location, sink);
+        }
+        // if the command is not a basic command
+        CommandEvents.TriggerMatch matching = new CommandEvents.TriggerMatch();
+        matching.begin();
+        long match = triggerMatcher.find(tokens);
+        CommandEvents.commit(matching, userName, match < 0 ? null : triggerMatcher.keyphrase(TriggerMatcher.matchedKeyphrase(match)), location.getName());
+        types[index] = match < 0 ? metrics.invalidType() : ServerMetrics.EXTENDED + TriggerMatcher.matchedKeyphrase(match);
+        return handleExtendedAction(tokens, match, player, location);
+    }
 
-        if (basicAction) {
-            // error handling for basic commands
-            boolean validBasicAction = isValidBasicAction(temp);
-            if (!validBasicAction) {
-                output = "[Error]: Invalid command, please try again\n";
+    // waits for everything journaled so far to be on disk, false if it can't be written
+    private boolean awaitDurable() {
+        CommandJournal commandJournal = journal;
+        if (commandJournal != null) {
+            try {
+                commandJournal.awaitDurable();
+            } catch (IOException e) {
+                return false;
             }
-            // health command
-            else if (temp[1].contains("health")){
-                output = "You have " + player.getHealth() + " health points";
+        }
+        return true;
+    }
+
+    // calls back once everything journaled so far is on disk, from the journal's flusher thread if it has to wait
+    private void whenDurable(CommandJournal.Durable callback) {
+        CommandJournal commandJournal = journal;
+        if (commandJournal == null) {
+            callback.done(true);
+        } else {
+            commandJournal.whenDurable(callback);
+        }
+    }
+
+    // records a command which changed the game, while the locks it changed the game under are held
+    private void journal(CommandTokens tokens) {
+        metrics.worldChanged();
+        CommandJournal commandJournal = journal;
+        if (commandJournal != null) {
+            // the tokenized text is replayed the same way as the original command
+            commandJournal.append(CommandJournal.COMMAND, tokens.getUserName() + ": " + tokens);
+        }
+    }
+
+    private Player createPlayer(String userName) {
+        Player player = new Player(userName);
+        player.setLocation(startLocation);
+        Location location = locationNamed(startLocation);
+
+        int[] held = location_locks.lockAll(List.of(location));
+        try {
+            location.addCharacter(player);
+            // a session may have subscribed before the player's first command
+            LocationFeed.Subscriber subscriber = subscribers_map.get(userName);
+            if (subscriber != null) {
+                location.subscribe(location_feed, subscriber);
+            }
+            CommandJournal commandJournal = journal;
+            if (commandJournal != null) {
+                commandJournal.append(CommandJournal.JOINED, userName);
             }
+        } finally {
+            location_locks.unlockAll(held);
+        }
+
+        players_map.put(userName, player);
+        metrics.playersJoined(1);
+        return player;
+    }
+
+    private String handleBasicAction(CommandTokens tokens, Player player, Location location, ResponseSink sink) {
+        // error handling for basic commands
+        boolean validBasicAction = isValidBasicAction(tokens);
+        if (!validBasicAction) {
+            return "[Error]: Invalid command, please try again\n";
+        }
+
+        switch (tokens.word(0)) {
+            // health command
+            case "health":
+                return "You have " + player.getHealth() + " health points";
             // inventory & inv commands
-            else if (temp[1].contains("inventory") || temp[1].contains("inv")) {
+            case "inventory":
+            case "inv": {
                 // set output to player's inventory
-                output = player.displayInventory();
+                CommandEvents.Render render = new CommandEvents.Render();
+                render.begin();
+                player.displayInventory(sink);
+                CommandEvents.commit(render, player.getName(), tokens.word(0), location.getName());
+                return null;
             }
-            // get & take commands
-            else if (temp[1].contains("get") || temp[1].contains("take")) {
-                Artefact selectedArtefact = null;
-                for (Artefact artefact : location.getArtefacts()) {
-                    if (temp[1].contains(artefact.getName())) {
-                        selectedArtefact = artefact;
-                        break;
+            // goto command
+            case "goto":
+                return handleGoto(tokens, player, location);
+            default:
+                break;
+        }
+
+        // everything else only touches the current location
+        int[] held = location_locks.lockAll(List.of(location));
+        try {
+            switch (tokens.word(0)) {
+                // get & take commands
+                case "get":
+                case "take": {
+                    Artefact selectedArtefact = location.getArtefact(nameAt(tokens, 1));
+                    if (selectedArtefact != null) {
+                        player.addInventory(selectedArtefact);
+                        location.removeArtefact(selectedArtefact.getName());
+                        entity_index.heldBy(selectedArtefact, player);
+                        journal(tokens);
+                        return selectedArtefact.getName() + " is added to the inventory\n";
                     }
+                    return "[Error]: Can't find the artefact, please try again\n";
                 }
-                if (selectedArtefact != null) {
-                    player.addInventory(selectedArtefact);
-                    location.removeArtefact(selectedArtefact.getName());
-                    clusters_map.put(location.getName(), location);
-                    output = selectedArtefact.getName() + " is added to the inventory\n";
-                } else {
-                    output = "[Error]: Can't find the artefact, please try again\n";
+                // drop command
+                case "drop": {
+                    Artefact selectedArtefact = player.getInventoryItem(nameAt(tokens, 1));
+                    if (selectedArtefact != null) {
+                        player.removeInventory(selectedArtefact.getName());
+                        location.addArtefact(selectedArtefact);
+                        entity_index.placeIn(selectedArtefact, location);
+                        journal(tokens);
+                        return selectedArtefact.getName() + " is dropped at " + location.getName() + "\n";
+                    }
+                    return "[Error]: Can't find the artefact in your inventory, please try again\n";
+                }
+                // look command
+                default: {
+                    // set out put to location's info
+                    CommandEvents.Render render = new CommandEvents.Render();
+                    render.begin();
+                    location.renderTo(sink);
+                    CommandEvents.commit(render, player.getName(), tokens.word(0), location.getName());
+                    return null;
                 }
             }
-            // drop command
-            else if (temp[1].contains("drop")) {
-                Artefact selectedArtefact = null;
-                for (Artefact artefact : player.getInventory()) {
-                    if (temp[1].contains(artefact.getName())) {
-                        selectedArtefact = artefact;
-                        break;
-                    }
+        } finally {
+            location_locks.unlockAll(held);
+        }
+    }
+
+    private String handleGoto(CommandTokens tokens, Player player, Location location) {
+        String target = nameAt(tokens, 1);
+        // if that location is not available
+        if (!location.hasPathTo(target) && !unlocked_locations.contains(target)) {
+            if (isLocation(target)) {
+                return "[Error]: The target location is locked, please unlock it first\n";
+            }
+            return "[Error]: Can't find a path to the target location, please try again\n";
+        }
+
+        while (true) {
+            // paths are only ever added, so the target can be picked before locking
+            Location nextLocation = locationNamed(target);
+            if (nextLocation == null) {
+                return "[Error]: Can't find a path to the target location, please try again\n";
+            }
+            int[] held = location_locks.lockAll(List.of(location, nextLocation));
+            try {
+                // paged out before we got the lock, look it up again
+                if (!isResident(nextLocation)) {
+                    continue;
                 }
-                if (selectedArtefact != null) {
-                    player.removeInventory(selectedArtefact.getName());
-                    location.addArtefact(selectedArtefact);
-                    clusters_map.put(location.getName(), location);
-                    output = selectedArtefact.getName() + " is dropped at " + location.getName() + "\n";
-                } else {
-                    output = "[Error]: Can't find the artefact in your inventory, please try again\n";
+                // set player's current location
+                player.setLocation(nextLocation.getName());
+                LocationFeed.Subscriber subscriber = subscribers_map.get(player.getName());
+                if (subscriber != null) {
+                    location.unsubscribe(subscriber);
+                }
+                // add player to the next location
+                nextLocation.addCharacter(player);
+                // remove player from the previous location
+                location.removePlayer(player.getName());
+                if (subscriber != null) {
+                    nextLocation.subscribe(location_feed, subscriber);
                 }
+                journal(tokens);
+            } finally {
+                location_locks.unlockAll(held);
+            }
+            return "You have moved to " + nextLocation.getName() + "\n";
+        }
+    }
+
+    private String handleExtendedAction(CommandTokens tokens, long match, Player player, Location location) {
+
+        // match correct command
+        if (match < 0) {
+            return "[Error]: Invalid action, please try again\n";
+        }
+        int keyphrase = TriggerMatcher.matchedKeyphrase(match);
+        String trigger = triggerMatcher.keyphrase(keyphrase);
+        int triggerStart = TriggerMatcher.matchStart(match);
 
+        // get all actions related to the trigger
+        GameAction[] candidates = content.getKeyphraseActions(keyphrase);
+
+        while (true) {
+            Location storeroom = locationNamed("storeroom");
+
+            // every location the actions could touch, apart from where produced entities currently are
+            List<Location> needed = new ArrayList<>();
+            needed.add(location);
+            if (storeroom != null) {
+                needed.add(storeroom);
             }
-            // goto command
-            else if (temp[1].contains("goto")) {
-                Location nextLocation = null;
-                for (Location nl : location.getTo()) {
-                    if (temp[1].contains(nl.getName())) {
-                        nextLocation = nl;
-                        break;
-                    }
+            for (GameAction action : candidates) {
+                // dying moves the player back to the start
+                if (contains(action.getConsumedIds(), health_id)) {
+                    needed.add(locationNamed(startLocation));
                 }
-                for (Location nl : Player.getUnlocked_locations()) {
-                    if (temp[1].contains(nl.getName())) {
-                        nextLocation = nl;
-                        break;
+                for (int prod : action.getProducedIds()) {
+                    if (isLocation(prod)) {
+                        needed.add(locationWithId(prod));
                     }
                 }
+            }
 
-                // if that location is available
-                if (nextLocation != null) {
-                    // set player's current location
-                    player.setLocation(nextLocation.getName());
-                    // add player to the next location
-                    nextLocation.addCharacter(player);
-                    // remove player from the previous location
-                    location.removeCharacter(player.getName());
-
-                    // update
-                    clusters_map.put(nextLocation.getName(), nextLocation);
-                    clusters_map.put(location.getName(), location);
-                    output = "You have moved to " + nextLocation.getName() + "\n";
-                } else {
-                    boolean locked = false;
-                    for (String ln : clusters_map.keySet()) {
-                        if (temp[1].contains(ln)) {
-                            locked = true;
-                            break;
-                        }
+            // find where the produced entities are, then lock them together with everything else
+            List<EntityIndex.Placement> sources = new ArrayList<>();
+            List<Location> toLock = new ArrayList<>(needed);
+            for (GameAction action : candidates) {
+                for (int prod : action.getProducedIds()) {
+                    EntityIndex.Placement source = entity_index.get(prod);
+                    if (source == null && paged_world != null && !isLocation(prod)) {
+                        // its region was paged out, bring it back in rather than skip producing it
+                        paged_world.pageIn(symbols.nameOf(prod));
+                        source = entity_index.get(prod);
                     }
-                    if (locked) {
-                        output = "[Error]: The target location is locked, please unlock it first\n";
-                    } else {
-                        output = "[Error]: Can't find a path to the target location, please try again\n";
+                    // entities carried by a player are never taken from them
+                    if (source != null && source.getLocation() != null && !isLocation(prod) && !sources.contains(source)) {
+                        sources.add(source);
+                        toLock.add(source.getLocation());
                     }
                 }
-
             }
-            // look command
-            else if (temp[1].contains("look")) {
-                // set out put to location's info
-                output = location.toString();
+
+            int[] held = location_locks.lockAll(toLock);
+            try {
+                // something was moved or paged out before we got the locks, look again
+                boolean moved = false;
+                for (EntityIndex.Placement source : sources) {
+                    if (entity_index.get(source.getEntity().getId()) != source) {
+                        moved = true;
+                        break;
+                    }
+                }
+                for (Location needs : needed) {
+                    if (!isResident(needs)) {
+                        moved = true;
+                        break;
+                    }
+                }
+                if (!moved) {
+                    return performExtendedAction(tokens, triggerStart, trigger, candidates, player, location, storeroom, sources);
+                }
+            } finally {
+                location_locks.unlockAll(held);
             }
         }
+    }
 
-        // if the command is not a basic command
-        else {
+    private String performExtendedAction(CommandTokens tokens, int triggerStart, String trigger, GameAction[] candidates,
+                                         Player player, Location location, Location storeroom,
+                                         List<EntityIndex.Placement> sources) {
+        // output
+        String output = "[Error]: Invalid action, please try again\n"; // initialize with error message
 
-            // get all triggers
-            Set<String> triggers = this.actions.keySet();
-            for (String trigger : triggers) {
+        // iterate one by one
+        for (GameAction action : candidates) {
 
-                // match correct command
-                if (temp[1].contains(trigger)) {
+            CommandEvents.Preconditions check = new CommandEvents.Preconditions();
+            check.begin();
+            boolean validExtendedAction = isValidExtendedAction(tokens, triggerStart, trigger, action);
+            // if the current location or player's inventory contains the required subjects
+            // then, this the correct Action
+            boolean allPresent = validExtendedAction && PresenceBits.covers(action.getSubjectBits(), player.getPresence(), location.getPresence());
+            CommandEvents.commit(check, player.getName(), trigger, location.getName());
 
-                    // all the entity in the current location and player's inventory
-                    List<GameEntity> items = new ArrayList<>();
-                    items.addAll(player.getInventory());
-                    items.addAll(location.getArtefacts());
-                    items.addAll(location.getFurniture());
-                    items.addAll(location.getCharacters());
+            if(!validExtendedAction) {
+                output = "[Error]: Invalid command, please try again\n";
+            }
+            else {
+                if (allPresent) {
+                    CommandEvents.Mutation mutation = new CommandEvents.Mutation();
+                    mutation.begin();
 
-                    // get all actions related to the trigger
-                    HashSet<GameAction> actionsSet = this.actions.get(trigger);
+                    // remove the consumed entities
+                    for (int con : action.getConsumedIds()) {
 
-                    // iterate one by one
-                    for (GameAction action : actionsSet) {
+                        if(con == health_id) {
+                            player.healthDrop();
+                        }
 
-                        boolean validExtendedAction = isValidExtendedAction(temp, action);
+                        // if health == 0
+                        // drop inventory
+                        // and move back to the starting location
+                        if(player.getHealth() == 0) {
+                            List<Artefact> inv = new ArrayList<>(player.getInventory());
+                            for(Artefact artefact: inv) {
+                                // add artefact back to the current location
+                                location.addArtefact(artefact);
+                                entity_index.placeIn(artefact, location);
+                                // drop from the inv
+                                player.removeInventory(artefact.getName());
+                            }
+
+                            // reset health
+                            player.healthUp();
+                            player.healthUp();
+                            player.healthUp();
+                            // move player back to the original location
+                            player.setLocation(startLocation);
+                            LocationFeed.Subscriber subscriber = subscribers_map.get(player.getName());
+                            if (subscriber != null) {
+                                location.unsubscribe(subscriber);
+                            }
+                            location.removePlayer(player.getName());
+                            Location start = locationNamed(startLocation);
+                            start.addCharacter(player);
+                            if (subscriber != null) {
+                                start.subscribe(location_feed, subscriber);
+                            }
+                            journal(tokens);
+                            CommandEvents.commit(mutation, player.getName(), trigger, location.getName());
+
+                            return "You have died and lost all the items in your inventory\n";
 
-                        if(!validExtendedAction) {
-                            output = "[Error]: Invalid command, please try again\n";
                         }
+                        // otherwise
                         else {
-                            // subjects
-                            List<String> subjects = action.getSubjects();
-                            // consumed
-                            List<String> consumed = action.getConsumed();
-                            // produced
-                            List<String> produced = action.getProduced();
-
-                            // if items contains the required subjects
-                            // then, this the correct Action
-                            if (items.stream().map(GameEntity::getName).toList().containsAll(subjects)) {
-                                Location storeroom = clusters_map.get("storeroom");
-
-                                // remove the consumed entities
-                                for (String con : consumed) {
-
-                                    if(con.equals("health")) {
-                                        player.healthDrop();
-                                    }
-
-                                    // if health == 0
-                                    // drop inventory
-                                    // and move back to the starting location
-                                    if(player.getHealth() == 0) {
-                                        List<Artefact> inv = player.getInventory();
-                                        List<Artefact> toBeRemoved = new ArrayList<>();
-                                        for(Artefact artefact: inv) {
-                                            // add artefact back to the current location
-                                            clusters_map.get(location.getName()).addArtefact(artefact);
-                                            toBeRemoved.add(artefact);
-                                        }
-                                        for (Artefact artefact: toBeRemoved) {
-                                            // drop from the inv
-                                            player.removeInventory(artefact.getName());
-                                        }
-
-                                        // reset health
-                                        player.healthUp();
-                                        player.healthUp();
-                                        player.healthUp();
-                                        // move player back to the original location
-                                        player.setLocation(startLocation);
-                                        clusters_map.get(location.getName()).removeCharacter(player.getName());
-                                        clusters_map.get(startLocation).addCharacter(player);
-
-                                        return "You have died and lost all the items in your inventory\n";
-
-                                    }
-                                    // otherwise
-                                    else {
-
-                                        for (Artefact tmpArtefact : location.getArtefacts()) {
-                                            if (tmpArtefact.getName().equals(con)) {
-                                                // move to store room
-                                                if (storeroom != null) {
-                                                    storeroom.addArtefact(tmpArtefact);
-                                                }
-                                                location.removeArtefact(con);
-                                                break;
-                                            }
-                                        }
-                                        for (Character tmpCharacter : location.getCharacters()) {
-                                            if (tmpCharacter.getName().equals(con)) {
-                                                // move to store room
-                                                if (storeroom != null) {
-                                                    storeroom.addCharacter(tmpCharacter);
-                                                }
-                                                location.removeCharacter(con);
-                                                break;
-                                            }
-                                        }
-                                        for (Furniture tmpFurniture : location.getFurniture()) {
-                                            if (tmpFurniture.getName().equals(con)) {
-                                                // move to store room
-                                                if (storeroom != null) {
-                                                    storeroom.addFurniture(tmpFurniture);
-                                                }
-                                                location.removeFurniture(con);
-                                                break;
-                                            }
-                                        }
-                                        for (Artefact tmpArtefact : player.getInventory()) {
-                                            if (tmpArtefact.getName().equals(con)) {
-                                                // move to store room
-                                                if (storeroom != null) {
-                                                    storeroom.addArtefact(tmpArtefact);
-                                                }
-                                                player.removeInventory(con);
-                                                break;
-                                            }
-                                        }
-                                    }
-                                }
+                            consumeEntity(con, player, location, storeroom);
+                        }
+                    }
 
-                                // update the store room
-                                if (storeroom != null) {
-                                    clusters_map.put(storeroom.getName(), storeroom);
-                                }
+                    for (int prod : action.getProducedIds()) {
 
-                                for (String prod : produced) {
-
-                                    if(prod.equals("health")) {
-                                        player.healthUp();
-                                    }
-                                    if (clusters_map.containsKey(prod)) {
-                                        Location newLocation = clusters_map.get(prod);
-                                        location.addTo(newLocation);
-                                        newLocation.addFrom(location);
-                                        player.addUnlockedLocation(newLocation);
-                                        clusters_map.put(location.getName(), location);
-                                        clusters_map.put(newLocation.getName(), newLocation);
-                                    }
-
-                                    GameEntity entity = null;
-                                    if (clusters_map.containsKey(prod)) {
-                                        player.addUnlockedLocation(clusters_map.get(prod));
-                                        players_map.put(player.getName(), player);
-                                    } else {
-                                        for (Location l : clusters_map.values()) {
-                                            List<Artefact> a = l.getArtefacts();
-                                            List<Furniture> f = l.getFurniture();
-                                            List<Character> c = l.getCharacters();
-
-                                            // if the entity is an artefact
-                                            for (Artefact t : a) {
-                                                if (t.getName().equals(prod)) {
-                                                    entity = t;
-                                                    l.removeArtefact(prod);
-                                                    location.addArtefact(t);
-                                                    break;
-                                                }
-                                            }
-                                            // if the entity is a furniture
-                                            if (entity == null) {
-                                                for (Furniture t : f) {
-                                                    if (t.getName().equals(prod)) {
-                                                        entity = t;
-                                                        l.removeFurniture(prod);
-                                                        location.addFurniture(t);
-                                                        break;
-                                                    }
-                                                }
-                                            }
-                                            // if the entity is a character
-                                            if (entity == null) {
-                                                for (Character t : c) {
-                                                    if (t.getName().equals(prod)) {
-                                                        entity = t;
-                                                        l.removeCharacter(prod);
-                                                        location.addCharacter(t);
-                                                        break;
-                                                    }
-                                                }
-                                            }
-
-                                            if (entity != null) {
-                                                // update the current location
-                                                clusters_map.put(location.getName(), location);
-                                                break;
-                                            }
-                                        }
-                                    }
+                        if(prod == health_id) {
+                            player.healthUp();
+                        }
+                        if (isLocation(prod)) {
+                            Location newLocation = locationWithId(prod);
+                            location.addTo(newLocation);
+                            newLocation.addFrom(location);
+                            unlocked_locations.addIfAbsent(newLocation.getName());
+                        }
+                        else {
+                            for (EntityIndex.Placement source : sources) {
+                                if (source.getEntity().getId() == prod) {
+                                    moveEntity(source, location);
+                                    break;
                                 }
-                                // set the output
-                                output = action.getNarration() + "\n";
-                                break;
-                            } else {
-                                output = "[Error]: Please collect all the required entities to trigger the command: " + trigger + " \n";
                             }
-
                         }
                     }
+                    journal(tokens);
+                    CommandEvents.commit(mutation, player.getName(), trigger, location.getName());
+                    // set the output
+                    output = action.getNarration() + "\n";
                     break;
+                } else {
+                    output = "[Error]: Please collect all the required entities to trigger the command: " + trigger + " \n";
                 }
-            }
 
+            }
         }
 
         return output;
     }
 
-    private static boolean isValidBasicAction(String[] command) {
-        String[] parts = command[1].split(" ");
-        boolean validInv = (parts[0].equals("inventory") || parts[0].equals("inv")) && (parts.length == 1);
-        boolean validGetTake = (parts[0].equals("get") || parts[0].equals("take")) && (parts.length == 2);
-        boolean validDrop = parts[0].equals("drop") && (parts.length == 2);
-        boolean validGoTo = parts[0].equals("goto") && (parts.length == 2);
-        boolean validLook = parts[0].equals("look") && (parts.length == 1);
-        boolean validhealth = parts[0].equals("health") && (parts.length == 1);
-        return validInv || validGetTake || validDrop || validGoTo || validLook || validhealth;
+    // moves a consumed entity from the current location or the player's inventory to the store room
+    private void consumeEntity(int id, Player player, Location location, Location storeroom) {
+        EntityIndex.Placement placement = entity_index.get(id);
+        if (placement == null) {
+            return;
+        }
+        GameEntity entity = placement.getEntity();
+        if (placement.getHolder() == player) {
+            player.removeInventory(entity.getName());
+        } else if (placement.getLocation() == location) {
+            removeFromLocation(entity, location);
+        } else {
+            return;
+        }
+
+        // move to store room
+        if (storeroom != null) {
+            addToLocation(entity, storeroom);
+            entity_index.placeIn(entity, storeroom);
+        } else {
+            entity_index.remove(entity);
+        }
     }
 
-    private static boolean isValidExtendedAction(String[] command, GameAction action) {
-        List<String> parts = new ArrayList<>(Arrays.asList(command[1].split(" ")));
-        parts.removeAll(Arrays.asList("with", "the", "using", "use", "of", "a", "at", "to", "this", "that", "my", "please", " ", null));
-        parts.remove(0);
-        List<String> subjects = action.getSubjects();
-        List<String> consumed = action.getConsumed();
+    private void moveEntity(EntityIndex.Placement placement, Location to) {
+        GameEntity entity = placement.getEntity();
+        removeFromLocation(entity, placement.getLocation());
+        addToLocation(entity, to);
+        entity_index.placeIn(entity, to);
+    }
 
-        boolean conditionOne = parts.size() == 1 || parts.size() == 2;
-        boolean conditionTwo = parts.size() == 1 && subjects.containsAll(parts);
-        boolean conditionThree = parts.size() == 2 && subjects.containsAll(parts) && (consumed.contains(parts.get(1)) || consumed.contains(parts.get(0)));
+    private static void removeFromLocation(GameEntity entity, Location location) {
+        if (entity instanceof Artefact) {
+            location.removeArtefact(entity.getName());
+        } else if (entity instanceof Furniture) {
+            location.removeFurniture(entity.getName());
+        } else if (entity instanceof Character) {
+            location.removeCharacter(entity.getName());
+        }
+    }
 
-        return conditionOne && (conditionTwo || conditionThree);
+    private static void addToLocation(GameEntity entity, Location location) {
+        if (entity instanceof Artefact) {
+            location.addArtefact((Artefact) entity);
+        } else if (entity instanceof Furniture) {
+            location.addFurniture((Furniture) entity);
+        } else if (entity instanceof Character) {
+            location.addCharacter((Character) entity);
+        }
+    }
+
+    private static boolean isValidBasicAction(CommandTokens tokens) {
+        if (tokens.size() == 0 || !tokens.is(0, CommandTokenizer.BASIC_COMMAND)) {
+            return false;
+        }
+        switch (tokens.word(0)) {
+            case "inventory":
+            case "inv":
+            case "look":
+            case "health":
+                return tokens.size() == 1;
+            default:
+                // get, take, drop and goto all need something to act on
+                return tokens.size() == 2;
+        }
+    }
+
+    private static boolean isValidExtendedAction(CommandTokens tokens, int triggerStart, String trigger, GameAction action) {
+        // everything apart from stopwords and the trigger itself, which may be several words long
+        int triggerEnd = triggerStart + trigger.length();
+        int first = -1;
+        int second = -1;
+        int parts = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.is(i, CommandTokenizer.STOPWORD) || (tokens.start(i) >= triggerStart && tokens.end(i) <= triggerEnd)) {
+                continue;
+            }
+            if (parts == 0) {
+                first = tokens.id(i);
+            } else if (parts == 1) {
+                second = tokens.id(i);
+            }
+            parts++;
+        }
+        int[] subjects = action.getSubjectIds();
+        int[] consumed = action.getConsumedIds();
+
+        // words the game doesn't know are never subjects
+        boolean conditionTwo = parts == 1 && contains(subjects, first);
+        boolean conditionThree = parts == 2 && contains(subjects, first) && contains(subjects, second)
+                && (contains(consumed, second) || contains(consumed, first));
+
+        return conditionTwo || conditionThree;
+    }
+
+    // entity lists are a handful of IDs, a scan beats any set
+    private static boolean contains(int[] ids, int id) {
+        if (id < 0) {
+            return false;
+        }
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -643,6 +983,338 @@ public final class GameServer {
         }
     }
 
+    /**
+    * Writes the current state of the game to a snapshot file. All commands are held off only while
+    * the state is copied, the file itself is written afterwards.
+    *
+    * @param file The snapshot file to (over)write.
+    * @throws IOException If the snapshot can't be written.
+    */
+    public void saveSnapshot(File file) throws IOException {
+        WorldSnapshot snapshot = captureSnapshot();
+        snapshot.write(file.toPath());
+        // the journal only has to go back as far as the snapshot
+        if (journal != null) {
+            journal.truncate(snapshot.getJournalSequence());
+        }
+    }
+
+    /**
+    * Restores the state of the game from a snapshot file, on top of the loaded config.
+    *
+    * @param file The snapshot file to read.
+    * @throws IOException If the snapshot can't be read.
+    */
+    public void restoreSnapshot(File file) throws IOException {
+        applySnapshot(WorldSnapshot.read(file.toPath()));
+    }
+
+    /**
+    * Replays the command journal in a directory on top of the current game (the restored snapshot
+    * or the loaded config), then writes every command which changes the game to it. Responses are
+    * only returned once every command journaled before them is on disk, so not even a command which
+    * only reads the game shows a change a crash could still lose.
+    *
+    * @param directory The journal directory, created if needed.
+    * @throws IOException If the journal can't be read.
+    */
+    public void openJournal(File directory) throws IOException {
+        requireLoadedWorld();
+        journal = CommandJournal.open(directory.toPath(), journal_sequence, (type, text) -> {
+            if (type == CommandJournal.JOINED) {
+                if (!players_map.containsKey(text)) {
+                    createPlayer(text);
+                }
+            } else {
+                handleCommand(text);
+            }
+        });
+    }
+
+    /**
+    * Keeps snapshotting the game to a file periodically and once more when the server shuts down.
+    *
+    * @param file The snapshot file.
+    * @param intervalSeconds How often to write a snapshot.
+    */
+    public void scheduleSnapshots(File file, long intervalSeconds) {
+        Runnable snapshot = () -> {
+            try {
+                saveSnapshot(file);
+            } catch (IOException e) {
+                System.out.println("Failed to write snapshot " + file + ": " + e.getMessage());
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(snapshot, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(snapshot));
+    }
+
+    WorldSnapshot captureSnapshot() {
+        requireLoadedWorld();
+        // every player stripe and then every location stripe, the same order commands use
+        player_locks.lockEverything();
+        location_locks.lockEverything();
+        try {
+            WorldSnapshot snapshot = new WorldSnapshot();
+            for (Location location : clusters_map.values()) {
+                WorldSnapshot.LocationState state = new WorldSnapshot.LocationState(location.getName());
+                location.getArtefacts().forEach(artefact -> state.getArtefacts().add(artefact.getName()));
+                location.getFurniture().forEach(furniture -> state.getFurniture().add(furniture.getName()));
+                for (Character character : location.getCharacters()) {
+                    if (!(character instanceof Player)) {
+                        state.getCharacters().add(character.getName());
+                    }
+                }
+                state.getPaths().addAll(location.getTo());
+                snapshot.getLocations().add(state);
+            }
+            snapshot.getUnlocked().addAll(unlocked_locations);
+            // every change up to here was journalled under one of the locks we hold
+            snapshot.setJournalSequence(journal == null ? journal_sequence : journal.lastSequence());
+            for (Player player : players_map.values()) {
+                WorldSnapshot.PlayerState state = new WorldSnapshot.PlayerState(player.getName(), player.getLocation(), player.getHealth());
+                player.getInventory().forEach(artefact -> state.getInventory().add(artefact.getName()));
+                snapshot.getPlayers().add(state);
+            }
+            return snapshot;
+        } finally {
+            location_locks.unlockEverything();
+            player_locks.unlockEverything();
+        }
+    }
+
+    void applySnapshot(WorldSnapshot snapshot) {
+        requireLoadedWorld();
+        player_locks.lockEverything();
+        location_locks.lockEverything();
+        try {
+            // every entity by kind and name, wherever it is now, as an artefact and furniture may share a name
+            Map<String, Artefact> artefacts = new HashMap<>();
+            Map<String, Furniture> furniture = new HashMap<>();
+            Map<String, Character> characters = new HashMap<>();
+            for (Location location : clusters_map.values()) {
+                location.getArtefacts().forEach(artefact -> artefacts.put(artefact.getName(), artefact));
+                location.getFurniture().forEach(item -> furniture.put(item.getName(), item));
+                for (Character character : location.getCharacters()) {
+                    if (!(character instanceof Player)) {
+                        characters.put(character.getName(), character);
+                    }
+                }
+            }
+            for (Player player : players_map.values()) {
+                player.getInventory().forEach(artefact -> artefacts.put(artefact.getName(), artefact));
+                clusters_map.get(player.getLocation()).removePlayer(player.getName());
+            }
+            metrics.playersJoined(-players_map.size());
+            players_map.clear();
+
+            // entities the snapshot knows about are taken out, anything new in the config stays put
+            Set<String> mentionedArtefacts = new HashSet<>();
+            Set<String> mentionedFurniture = new HashSet<>();
+            Set<String> mentionedCharacters = new HashSet<>();
+            for (WorldSnapshot.LocationState state : snapshot.getLocations()) {
+                mentionedArtefacts.addAll(state.getArtefacts());
+                mentionedFurniture.addAll(state.getFurniture());
+                mentionedCharacters.addAll(state.getCharacters());
+            }
+            snapshot.getPlayers().forEach(state -> mentionedArtefacts.addAll(state.getInventory()));
+            // only what each location holds, rather than every mentioned name against every location
+            for (Location location : clusters_map.values()) {
+                for (Artefact artefact : location.getArtefacts()) {
+                    if (mentionedArtefacts.contains(artefact.getName())) {
+                        location.removeArtefact(artefact.getName());
+                    }
+                }
+                for (Furniture item : location.getFurniture()) {
+                    if (mentionedFurniture.contains(item.getName())) {
+                        location.removeFurniture(item.getName());
+                    }
+                }
+                for (Character character : location.getCharacters()) {
+                    if (!(character instanceof Player) && mentionedCharacters.contains(character.getName())) {
+                        location.removeCharacter(character.getName());
+                    }
+                }
+            }
+
+            for (WorldSnapshot.LocationState state : snapshot.getLocations()) {
+                Location location = clusters_map.get(state.getName());
+                // the location is gone from the config
+                if (location == null) {
+                    continue;
+                }
+                for (String name : state.getArtefacts()) {
+                    if (artefacts.containsKey(name)) {
+                        location.addArtefact(artefacts.get(name));
+                    }
+                }
+                for (String name : state.getFurniture()) {
+                    if (furniture.containsKey(name)) {
+                        location.addFurniture(furniture.get(name));
+                    }
+                }
+                for (String name : state.getCharacters()) {
+                    if (characters.containsKey(name)) {
+                        location.addCharacter(characters.get(name));
+                    }
+                }
+                for (String name : state.getPaths()) {
+                    Location to = clusters_map.get(name);
+                    if (to != null) {
+                        location.addTo(to);
+                        to.addFrom(location);
+                    }
+                }
+            }
+            for (String name : snapshot.getUnlocked()) {
+                if (clusters_map.containsKey(name)) {
+                    unlocked_locations.addIfAbsent(name);
+                }
+            }
+
+            for (WorldSnapshot.PlayerState state : snapshot.getPlayers()) {
+                Player player = new Player(state.getName());
+                String locationName = clusters_map.containsKey(state.getLocation()) ? state.getLocation() : startLocation;
+                player.setLocation(locationName);
+                player.setHealth(state.getHealth());
+                for (String name : state.getInventory()) {
+                    if (artefacts.containsKey(name)) {
+                        player.addInventory(artefacts.get(name));
+                    }
+                }
+                clusters_map.get(locationName).addCharacter(player);
+                players_map.put(player.getName(), player);
+            }
+
+            metrics.playersJoined(players_map.size());
+            indexEntities();
+            journal_sequence = snapshot.getJournalSequence();
+        } finally {
+            location_locks.unlockEverything();
+            player_locks.unlockEverything();
+        }
+    }
+
+    // regions written back while paging would be ahead of any snapshot, and replaying on top of them
+    // would apply commands twice
+    private void requireLoadedWorld() {
+        if (paged_world != null) {
+            throw new IllegalStateException("A paged world is saved to its region files, not to snapshots or a journal");
+        }
+    }
+
+    // every location of the loaded game, for tools built on top of the server
+    Collection<Location> getLocations() {
+        return paged_world == null ? Collections.unmodifiableCollection(clusters_map.values()) : paged_world.getResidentLocations();
+    }
+
+    // the stripes commands lock locations with, for tests which hold one
+    LockStripes getLocationLocks() {
+        return location_locks;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+    * Pushes the changes of the player's location to a session until it unsubscribes, following the
+    * player from location to location.
+    *
+    * @param userName The player, who doesn't have to have joined yet
+    * @param subscriber The session of the player
+    */
+    @Override
+    public void subscribe(String userName, LocationFeed.Subscriber subscriber) {
+        String name = userName.toLowerCase();
+        ReentrantLock playerLock = player_locks.lockFor(name);
+        playerLock.lock();
+        try {
+            LocationFeed.Subscriber previous = subscribers_map.put(name, subscriber);
+            Player player = players_map.get(name);
+            if (player != null) {
+                Location location = locationNamed(player.getLocation());
+                int[] held = location_locks.lockAll(List.of(location));
+                try {
+                    if (previous != null) {
+                        location.unsubscribe(previous);
+                    }
+                    location.subscribe(location_feed, subscriber);
+                } finally {
+                    location_locks.unlockAll(held);
+                }
+            }
+        } finally {
+            playerLock.unlock();
+        }
+    }
+
+    @Override
+    public void unsubscribe(String userName, LocationFeed.Subscriber subscriber) {
+        String name = userName.toLowerCase();
+        ReentrantLock playerLock = player_locks.lockFor(name);
+        playerLock.lock();
+        try {
+            // another session of the same player may have taken over
+            if (!subscribers_map.remove(name, subscriber)) {
+                return;
+            }
+            Player player = players_map.get(name);
+            if (player != null) {
+                Location location = locationNamed(player.getLocation());
+                int[] held = location_locks.lockAll(List.of(location));
+                try {
+                    location.unsubscribe(subscriber);
+                } finally {
+                    location_locks.unlockAll(held);
+                }
+            }
+        } finally {
+            playerLock.unlock();
+        }
+    }
+
+    // stops pushing changes, for a world which is shut down
+    void stopFeed() {
+        location_feed.stop();
+    }
+
+    public int getPlayerCount() {
+        return players_map.size();
+    }
+
+    // every action of the loaded game, keyed by trigger
+    Map<String, HashSet<GameAction>> getActions() {
+        return Collections.unmodifiableMap(actions);
+    }
+
+    /**
+    * Starts a non-blocking socket server which keeps connections open, so a client can send
+    * many commands over the same connection.
+    *
+    * @param portNumber The port to listen on.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void nonBlockingListenOn(int portNumber) throws IOException {
+        new NonBlockingServer(this).listenOn(portNumber);
+    }
+
+    /**
+    * Starts a socket server which runs every connected client as a long-lived session on its
+    * own thread (a virtual thread when the runtime supports them).
+    *
+    * @param portNumber The port to listen on.
+    * @throws IOException If any IO related operation fails.
+    */
+    public void sessionListenOn(int portNumber) throws IOException {
+        new SessionServer(this).listenOn(portNumber);
+    }
+
     /**
     * Do not change the following method signature or we won't be able to mark your submission
     * Handles an incoming connection from the socket server.
@@ -652,16 +1324,19 @@ public final class GameServer {
     */
     private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
         try (Socket s = serverSocket.accept();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()))) {
             System.out.println("Connection established");
             String incomingCommand = reader.readLine();
             if(incomingCommand != null) {
                 System.out.println("Received message from " + incomingCommand);
-                String result = handleCommand(incomingCommand);
-                writer.write(result);
-                writer.write("\n" + END_OF_TRANSMISSION + "\n");
-                writer.flush();
+                ResponseBuffer response = ResponseBuffer.acquire();
+                try {
+                    handleCommand(incomingCommand, response);
+                    response.append(RESPONSE_TRAILER);
+                    response.writeTo(s.getOutputStream());
+                } finally {
+                    response.release();
+                }
             }
         }
     }
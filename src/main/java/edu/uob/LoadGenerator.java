@@ -0,0 +1,209 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless load generator which plays the game with many concurrent players over loopback.
+ *
+ * <p>Each simulated player keeps one {@link GameConnection} open and either cycles through a
+ * script (one command per line) or plays a random mix of basic commands and extended actions drawn
+ * from the loaded entities and actions files. At the end the throughput and latency percentiles
+ * over all players are printed.
+ *
+ * <p>Options: --players N, --duration SECONDS, --host HOST, --port PORT, --entities FILE,
+ * --actions FILE, --script FILE, --seed SEED, --batch N, --binary true
+ *
+ * <p>With {@code --batch N} every player sends N commands at a time as one batch, each of them is
+ * counted with the round trip of the whole batch.
+ */
+public final class LoadGenerator {
+
+    private int players = 10;
+    private int durationSeconds = 10;
+    private String host = "localhost";
+    private int port = 8888;
+    private File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    private File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+    private List<String> script;
+    private long seed = System.nanoTime();
+    private int batch = 1;
+    private boolean binary;
+
+    // commands to draw from when there is no script
+    private final List<String> locations = new ArrayList<>();
+    private final List<String> artefacts = new ArrayList<>();
+    private final List<String> extendedCommands = new ArrayList<>();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parseArguments(args);
+        generator.run();
+    }
+
+    private void parseArguments(String[] args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--players": players = Integer.parseInt(value); break;
+                case "--duration": durationSeconds = Integer.parseInt(value); break;
+                case "--host": host = value; break;
+                case "--port": port = Integer.parseInt(value); break;
+                case "--entities": entitiesFile = new File(value); break;
+                case "--actions": actionsFile = new File(value); break;
+                case "--script": script = Files.readAllLines(Paths.get(value), StandardCharsets.UTF_8); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--batch": batch = Integer.parseInt(value); break;
+                case "--binary": binary = Boolean.parseBoolean(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private void loadCommandMix() {
+        // load the game locally just to know what can be said to it
+        GameServer game = new GameServer(entitiesFile, actionsFile);
+        HashSet<String> subjects = new HashSet<>();
+        for (Location location : game.getLocations()) {
+            locations.add(location.getName());
+            location.getArtefacts().forEach(artefact -> artefacts.add(artefact.getName()));
+        }
+        for (Map.Entry<String, HashSet<GameAction>> trigger : game.getActions().entrySet()) {
+            for (GameAction action : trigger.getValue()) {
+                for (String subject : action.getSubjects()) {
+                    if (subjects.add(trigger.getKey() + " " + subject)) {
+                        extendedCommands.add(trigger.getKey() + " " + subject);
+                    }
+                }
+            }
+        }
+    }
+
+    private String nextCommand(Random random, int step) {
+        if (script != null) {
+            return script.get(step % script.size());
+        }
+        int roll = random.nextInt(100);
+        if (roll < 40 || artefacts.isEmpty()) {
+            return "look";
+        } else if (roll < 50) {
+            return "inv";
+        } else if (roll < 55) {
+            return "health";
+        } else if (roll < 63) {
+            return "get " + artefacts.get(random.nextInt(artefacts.size()));
+        } else if (roll < 70) {
+            return "drop " + artefacts.get(random.nextInt(artefacts.size()));
+        } else if (roll < 85 || extendedCommands.isEmpty()) {
+            return "goto " + locations.get(random.nextInt(locations.size()));
+        }
+        return extendedCommands.get(random.nextInt(extendedCommands.size()));
+    }
+
+    private void run() throws InterruptedException {
+        if (script == null) {
+            loadCommandMix();
+        } else {
+            script.removeIf(String::isBlank);
+        }
+
+        long[][] latencies = new long[players][];
+        int[] counts = new int[players];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService pool = SessionServer.newSessionExecutor();
+        long start = System.nanoTime();
+        for (int p = 0; p < players; p++) {
+            int player = p;
+            pool.execute(() -> {
+                Random random = new Random(seed + player);
+                long[] samples = new long[1024];
+                int count = 0;
+                try (GameConnection connection = new GameConnection(host, port, "load" + player, binary)) {
+                    List<String> commands = new ArrayList<>(batch);
+                    while (System.nanoTime() < deadline) {
+                        commands.clear();
+                        for (int i = 0; i < batch; i++) {
+                            commands.add(nextCommand(random, count + i));
+                        }
+                        long sent = System.nanoTime();
+                        try {
+                            if (batch == 1) {
+                                connection.send(commands.get(0));
+                            } else {
+                                connection.sendBatch(commands);
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        long latency = System.nanoTime() - sent;
+                        if (count + batch > samples.length) {
+                            samples = Arrays.copyOf(samples, Math.max(count * 2, count + batch));
+                        }
+                        for (int i = 0; i < batch; i++) {
+                            samples[count++] = latency;
+                        }
+                    }
+                }
+                latencies[player] = samples;
+                counts[player] = count;
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        report(latencies, counts, elapsed);
+    }
+
+    private void report(long[][] latencies, int[] counts, long elapsed) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int p = 0; p < players; p++) {
+            if (latencies[p] != null) {
+                System.arraycopy(latencies[p], 0, all, offset, counts[p]);
+                offset += counts[p];
+            }
+        }
+        Arrays.sort(all, 0, offset);
+
+        double seconds = elapsed / 1e9;
+        System.out.println("Players:     " + players);
+        System.out.println("Duration:    " + String.format("%.1f s", seconds));
+        System.out.println("Commands:    " + offset);
+        System.out.println("Errors:      " + errors.get());
+        System.out.println("Throughput:  " + String.format("%.0f commands/s", offset / seconds));
+        if (offset == 0) {
+            return;
+        }
+        System.out.println("Latency p50:   " + micros(all, offset, 0.50));
+        System.out.println("Latency p90:   " + micros(all, offset, 0.90));
+        System.out.println("Latency p99:   " + micros(all, offset, 0.99));
+        System.out.println("Latency p99.9: " + micros(all, offset, 0.999));
+        System.out.println("Latency max:   " + String.format("%d us", all[offset - 1] / 1000));
+    }
+
+    private static String micros(long[] sorted, int count, double percentile) {
+        int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+        return String.format("%d us", sorted[Math.max(0, index)] / 1000);
+    }
+}
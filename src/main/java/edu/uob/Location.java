@@ -1,114 +1,309 @@
 package edu.uob;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Location extends GameEntity {
 
-    private List<Character> characters;
-    private List<Artefact> artefacts;
-    private List<Furniture> furniture;
-    private List<Location> from;
-    private List<Location> to;
+    // keyed by name, in the order the entities arrived so "look" keeps its order
+    private final Map<String, Character> characters;
+    // players are kept apart, so a player never replaces a character with the same name
+    private final Map<String, Player> players;
+    private final Map<String, Artefact> artefacts;
+    private final Map<String, Furniture> furniture;
+    // paths are read without holding the location's lock, so they are replaced rather than changed.
+    // they only hold the name and description of the other end, so a path never keeps the location
+    // it leads to in memory
+    private volatile Map<String, String> from;
+    private volatile Map<String, String> to;
+    // the IDs of every entity here, guarded by the location's lock like the entities themselves
+    private final PresenceBits presence = new PresenceBits();
+    // the sessions told about changes here, null until the first one subscribes
+    private volatile LocationFeed.Channel channel;
+
+    // bumped on every change, so a paged out location knows whether it has to be written back
+    private long changes;
+
+    // bumped whenever anything shown by "look" changes
+    private long version;
+    // each rendered section of "look", null once it has changed and needs rendering again
+    private String header;
+    private String artefactsSection;
+    private String charactersSection;
+    private String furnitureSection;
+    private String exitsSection;
+    private String rendered;
+    private long renderedVersion = -1;
 
     public Location(String name, String description) {
         super(name, description);
-        this.characters = new ArrayList<>();
-        this.artefacts = new ArrayList<>();
-        this.furniture = new ArrayList<>();
-        this.from = new ArrayList<>();
-        this.to = new ArrayList<>();
+        this.characters = new LinkedHashMap<>();
+        this.players = new LinkedHashMap<>();
+        this.artefacts = new LinkedHashMap<>();
+        this.furniture = new LinkedHashMap<>();
+        this.from = Collections.emptyMap();
+        this.to = Collections.emptyMap();
+    }
+
+    // starts out with paths shared with every other world played from the same content, they are
+    // copied the first time one is added
+    Location(String name, String description, Map<String, String> to, Map<String, String> from) {
+        this(name, description);
+        this.to = to;
+        this.from = from;
     }
 
     public void addCharacter(Character character) {
-        this.characters.add(character);
+        if (character instanceof Player) {
+            this.players.put(character.getName(), (Player) character);
+        } else {
+            this.characters.put(character.getName(), character);
+            this.presence.add(character.getId());
+        }
+        this.charactersSection = null;
+        changed('+', character);
+        this.version++;
+        this.changes++;
+    }
+
+    public void removePlayer(String player) {
+        Player removed = this.players.remove(player);
+        if (removed != null) {
+            changed('-', removed);
+            this.charactersSection = null;
+            this.version++;
+            this.changes++;
+        }
     }
 
+    // a game character, never a player
     public void removeCharacter(String character) {
-        this.characters.removeIf(obj -> obj.getName().equals(character));
+        Character removed = this.characters.remove(character);
+        if (removed != null) {
+            forget(removed);
+            changed('-', removed);
+            this.charactersSection = null;
+            this.version++;
+            this.changes++;
+        }
     }
 
     public void addArtefact(Artefact artefact) {
-        this.artefacts.add(artefact);
+        this.artefacts.put(artefact.getName(), artefact);
+        this.presence.add(artefact.getId());
+        changed('+', artefact);
+        this.artefactsSection = null;
+        this.version++;
+        this.changes++;
     }
 
     public void removeArtefact(String artefactName) {
-        artefacts.removeIf(obj -> obj.getName().equals(artefactName));
+        Artefact removed = artefacts.remove(artefactName);
+        if (removed != null) {
+            forget(removed);
+            changed('-', removed);
+            this.artefactsSection = null;
+            this.version++;
+            this.changes++;
+        }
     }
 
     public void addFurniture(Furniture furniture) {
-        this.furniture.add(furniture);
+        this.furniture.put(furniture.getName(), furniture);
+        this.presence.add(furniture.getId());
+        changed('+', furniture);
+        this.furnitureSection = null;
+        this.version++;
+        this.changes++;
     }
 
     public void removeFurniture(String furniture) {
-        this.furniture.removeIf(obj -> obj.getName().equals(furniture));
+        Furniture removed = this.furniture.remove(furniture);
+        if (removed != null) {
+            forget(removed);
+            changed('-', removed);
+            this.furnitureSection = null;
+            this.version++;
+            this.changes++;
+        }
     }
 
     public void addTo(Location location) {
-        if (!to.stream().map(GameEntity::getName).toList().contains(location.getName())) {
-            this.to.add(location);
+        addTo(location.getName(), location.getDescription());
+    }
+
+    public void addTo(String name, String description) {
+        if (!to.containsKey(name)) {
+            Map<String, String> paths = new LinkedHashMap<>(to);
+            paths.put(name, description);
+            this.to = paths;
+            this.exitsSection = null;
+            LocationFeed.Channel feed = channel;
+            if (feed != null) {
+                feed.record('+', "path", name);
+            }
+            this.version++;
+            this.changes++;
         }
     }
 
     public void addFrom(Location location) {
-        if (!from.stream().map(GameEntity::getName).toList().contains(location.getName())) {
-            this.from.add(location);
+        addFrom(location.getName(), location.getDescription());
+    }
+
+    public void addFrom(String name, String description) {
+        if (!from.containsKey(name)) {
+            Map<String, String> paths = new LinkedHashMap<>(from);
+            paths.put(name, description);
+            this.from = paths;
+            this.changes++;
+        }
+    }
+
+    // starts telling the session about changes here, call it with the location's lock held
+    void subscribe(LocationFeed feed, LocationFeed.Subscriber subscriber) {
+        if (channel == null) {
+            channel = feed.newChannel(this);
+        }
+        channel.subscribe(subscriber);
+    }
+
+    void unsubscribe(LocationFeed.Subscriber subscriber) {
+        LocationFeed.Channel feed = channel;
+        if (feed != null) {
+            feed.unsubscribe(subscriber);
         }
     }
 
+    // only recorded while a session is subscribed
+    private void changed(char sign, GameEntity entity) {
+        LocationFeed.Channel feed = channel;
+        if (feed != null) {
+            String kind = entity instanceof Player ? "player" : entity instanceof Character ? "character"
+                    : entity instanceof Artefact ? "artefact" : "furniture";
+            feed.record(sign, kind, entity.getName());
+        }
+    }
 
+    // an artefact and a piece of furniture may share a name, the bit stays while either is here
+    private void forget(GameEntity entity) {
+        if (!contains(entity.getName())) {
+            presence.remove(entity.getId());
+        }
+    }
+
+    PresenceBits getPresence() {
+        return presence;
+    }
+
+    public Artefact getArtefact(String name) {
+        return artefacts.get(name);
+    }
+
+    // whether an artefact, piece of furniture or character with this name is here
+    public boolean contains(String name) {
+        return artefacts.containsKey(name) || furniture.containsKey(name) || characters.containsKey(name);
+    }
+
+    public boolean hasPathTo(String name) {
+        return to.containsKey(name);
+    }
+
+    // the characters of the game followed by the players, like "look" shows them
     public List<Character> getCharacters() {
-        return characters;
+        List<Character> all = new ArrayList<>(characters.size() + players.size());
+        all.addAll(characters.values());
+        all.addAll(players.values());
+        return Collections.unmodifiableList(all);
+    }
+
+    public List<Player> getPlayers() {
+        return List.copyOf(players.values());
     }
 
     public List<Artefact> getArtefacts() {
-        return artefacts;
+        return List.copyOf(artefacts.values());
     }
 
     public List<Furniture> getFurniture() {
-        return furniture;
+        return List.copyOf(furniture.values());
+    }
+
+    // names of the locations with a path to here
+    public List<String> getFrom() {
+        return List.copyOf(from.keySet());
     }
 
-    public List<Location> getFrom() {
-        return from;
+    // names of the locations there is a path to
+    public List<String> getTo() {
+        return List.copyOf(to.keySet());
     }
 
-    public List<Location> getTo() {
-        return to;
+    public String getPathDescription(String name) {
+        String description = to.get(name);
+        return description != null ? description : from.get(name);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getChanges() {
+        return changes;
     }
 
     @Override
     public String toString() {
-        StringBuilder output = new StringBuilder("Location: " + getName() + " (" + getDescription() + ")\n");
-
-        if (!getArtefacts().isEmpty()) {
-            output.append("  Artefacts you can see:\n");
-            for (Artefact a : getArtefacts()) {
-                output.append("   * ").append(a.toString()).append("\n");
-            }
+        // nothing has changed since the last "look"
+        if (rendered != null && renderedVersion == version) {
+            return rendered;
         }
+        StringBuilder output = new StringBuilder();
+        renderTo(ResponseSink.of(output));
+        rendered = output.toString();
+        renderedVersion = version;
+        return rendered;
+    }
 
-        if (!getCharacters().isEmpty()) {
-            output.append("  Characters you can see:\n");
-            for (Character c : getCharacters()) {
-                output.append("   * ").append(c.toString()).append("\n");
-            }
+    // renders what "look" shows straight into the response, only the sections which changed are rendered again
+    public void renderTo(ResponseSink output) {
+        if (header == null) {
+            header = "Location: " + getName() + " (" + getDescription() + ")\n";
         }
-
-        if (!getFurniture().isEmpty()) {
-            output.append("  Furniture you can see:\n");
-            for (Furniture f : getFurniture()) {
-                output.append("   * ").append(f.toString()).append("\n");
-            }
+        if (artefactsSection == null) {
+            artefactsSection = renderSection("  Artefacts you can see:\n", artefacts.values());
         }
-
-        if (!to.isEmpty()) {
-            output.append("  From here you can go to:\n");
-            for (Location c : to) {
-                output.append("   * ").append(c.getName()).append(" (").append(c.getDescription()).append(")\n");
+        if (charactersSection == null) {
+            charactersSection = renderSection("  Characters you can see:\n", getCharacters());
+        }
+        if (furnitureSection == null) {
+            furnitureSection = renderSection("  Furniture you can see:\n", furniture.values());
+        }
+        if (exitsSection == null) {
+            StringBuilder exits = new StringBuilder();
+            if (!to.isEmpty()) {
+                exits.append("  From here you can go to:\n");
+                for (Map.Entry<String, String> path : to.entrySet()) {
+                    exits.append("   * ").append(path.getKey()).append(" (").append(path.getValue()).append(")\n");
+                }
             }
+            exitsSection = exits.toString();
         }
+        output.append(header).append(artefactsSection).append(charactersSection).append(furnitureSection).append(exitsSection);
+    }
 
+    private static String renderSection(String title, Collection<? extends GameEntity> entities) {
+        if (entities.isEmpty()) {
+            return "";
+        }
+        StringBuilder output = new StringBuilder(title);
+        for (GameEntity entity : entities) {
+            output.append("   * ").append(entity.toString()).append("\n");
+        }
         return output.toString();
     }
 
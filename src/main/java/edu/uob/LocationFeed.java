@@ -0,0 +1,141 @@
+package edu.uob;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes what changes in a location to the sessions of the players there who subscribed to it, so
+ * they don't have to poll with "look".
+ *
+ * <p>Each location keeps its subscribers and records its changes (entities and players arriving
+ * and leaving, paths being unlocked) only while it has any. Once per tick every location which
+ * changed coalesces its changes into their net effect, so an artefact picked up and dropped again
+ * within a tick isn't reported at all, and encodes them into a single {@link BinaryProtocol#EVENT}
+ * frame which every subscriber is handed as is. A busy room costs one frame per subscriber per
+ * tick instead of one message per subscriber per change. The frame holds the name of the location
+ * followed by one line per change, e.g. {@code +artefact log} or {@code -player simon}.
+ */
+public final class LocationFeed {
+
+    // one thread ticks the feeds of every world in the JVM
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "location-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A session which wants the changes of the location its player is in.
+     */
+    public interface Subscriber {
+        // called on the ticker thread, the frame is shared by every subscriber and must not be changed
+        void push(byte[] frame);
+    }
+
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Channel> changed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile ScheduledFuture<?> ticks;
+
+    /**
+     * @param tickMillis How often the changes are pushed, nothing is pushed automatically if 0.
+     */
+    public LocationFeed(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    // called by the location the first time a session subscribes to it
+    Channel newChannel(Location location) {
+        if (tickMillis > 0 && started.compareAndSet(false, true)) {
+            ticks = TICKER.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+        return new Channel(location.getName());
+    }
+
+    /**
+     * Pushes the coalesced changes of every location which changed since the last tick.
+     */
+    public void tick() {
+        Channel channel = changed.poll();
+        while (channel != null) {
+            channel.queued.set(false);
+            byte[] frame = channel.drain();
+            if (frame != null) {
+                for (Subscriber subscriber : channel.subscribers) {
+                    subscriber.push(frame);
+                }
+            }
+            channel = changed.poll();
+        }
+    }
+
+    public void stop() {
+        ScheduledFuture<?> scheduled = ticks;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * The subscribers and pending changes of one location.
+     */
+    final class Channel {
+        private final String locationName;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        // "+kind name" or "-kind name", in the order they happened
+        private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        private Channel(String locationName) {
+            this.locationName = locationName;
+        }
+
+        void subscribe(Subscriber subscriber) {
+            subscribers.add(subscriber);
+        }
+
+        void unsubscribe(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+        }
+
+        void record(char sign, String kind, String name) {
+            if (subscribers.isEmpty()) {
+                return;
+            }
+            pending.add(sign + kind + " " + name);
+            if (queued.compareAndSet(false, true)) {
+                changed.add(this);
+            }
+        }
+
+        // the net effect of the pending changes as a frame, null if they cancel out
+        private byte[] drain() {
+            Map<String, Integer> net = new LinkedHashMap<>();
+            String change = pending.poll();
+            while (change != null) {
+                net.merge(change.substring(1), change.charAt(0) == '+' ? 1 : -1, Integer::sum);
+                change = pending.poll();
+            }
+            StringBuilder text = new StringBuilder(locationName).append('\n');
+            boolean any = false;
+            for (Map.Entry<String, Integer> entry : net.entrySet()) {
+                if (entry.getValue() != 0) {
+                    text.append(entry.getValue() > 0 ? '+' : '-').append(entry.getKey()).append('\n');
+                    any = true;
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            return BinaryProtocol.frame(BinaryProtocol.EVENT, text).array();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks which entities are hashed onto by name.
+ *
+ * <p>Several stripes are always acquired in ascending index order, so two commands locking
+ * overlapping sets of locations can never deadlock. A command only ever holds one player stripe,
+ * and always takes it before any location stripe.
+ */
+public final class LockStripes {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public LockStripes(int stripes) {
+        // round up to a power of two so the stripe is a simple mask
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public int stripeOf(String name) {
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public ReentrantLock lockFor(String name) {
+        return locks[stripeOf(name)];
+    }
+
+    // locks the stripes of every entity and returns them, ready to be passed to unlockAll
+    public int[] lockAll(Collection<? extends GameEntity> entities) {
+        int[] stripes = new int[entities.size()];
+        int count = 0;
+        for (GameEntity entity : entities) {
+            stripes[count++] = stripeOf(entity.getName());
+        }
+        Arrays.sort(stripes);
+
+        // drop duplicates so each stripe is only locked once
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        int[] held = distinct == count ? stripes : Arrays.copyOf(stripes, distinct);
+
+        for (int stripe : held) {
+            locks[stripe].lock();
+        }
+        return held;
+    }
+
+    // locks every stripe, for operations which need the whole world to stand still
+    public void lockEverything() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    public void unlockEverything() {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    public void unlockAll(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            locks[held[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Selector based server mode which keeps client connections open.
+ *
+ * <p>Every connection may send any number of newline terminated commands, each response is
+ * followed by the usual END_OF_TRANSMISSION line, exactly as in the blocking server. Clients which
+ * open with the {@link BinaryProtocol} hello speak length-prefixed frames instead.
+ *
+ * <p>The selector thread only reads, parses and writes. Commands are run on a small pool of
+ * workers, since they can wait for locks or page regions in from disk, one at a time and in order
+ * for each connection. Their responses are queued straight away and held back until the worker is
+ * done and the handler reports them saved, from the journal's flusher thread, either of which
+ * wakes the selector up to send them, in order.
+ */
+public final class NonBlockingServer {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final byte[] RESPONSE_TRAILER = ("\n" + END_OF_TRANSMISSION + "\n").getBytes(StandardCharsets.UTF_8);
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_COMMAND_LENGTH = 64 * 1024;
+    // stop reading from a client that does not drain its responses
+    private static final int MAX_PENDING_RESPONSES = 64;
+    // the protocol of a connection
+    private static final int UNDECIDED = 0;
+    private static final int TEXT = 1;
+    private static final int BINARY = 2;
+
+    // e.g. -Dstag.workers=16, the threads commands are run on
+    private static final int WORKERS = Integer.getInteger("stag.workers", Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private final CommandHandler server;
+    // connections with events pushed or responses saved by other threads, see LocationFeed
+    private final ConcurrentLinkedQueue<SelectionKey> pushed = new ConcurrentLinkedQueue<>();
+
+    public NonBlockingServer(CommandHandler server) {
+        this.server = server;
+    }
+
+    public void listenOn(int portNumber) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS, task -> {
+            Thread thread = new Thread(task, "command-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Server listening on port " + portNumber + " (non-blocking)");
+
+            while (!Thread.interrupted()) {
+                selector.select();
+                deliverPushed();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(serverChannel, selector, workers);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close(key);
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel, Selector selector, ExecutorService workers) throws IOException {
+        SocketChannel client = serverChannel.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        Connection connection = new Connection(pushed, workers);
+        connection.key = client.register(selector, SelectionKey.OP_READ, connection);
+        System.out.println("Connection established");
+    }
+
+    // queues the events pushed since the last select behind the responses already queued
+    private void deliverPushed() {
+        SelectionKey key = pushed.poll();
+        while (key != null) {
+            if (key.isValid()) {
+                Connection connection = (Connection) key.attachment();
+                byte[] frame = connection.events.poll();
+                while (frame != null) {
+                    // a client which doesn't drain its responses misses events instead of piling them up
+                    if (connection.output.size() < MAX_PENDING_RESPONSES) {
+                        connection.queue(ResponseBuffer.acquire().append(frame), null);
+                    }
+                    frame = connection.events.poll();
+                }
+                try {
+                    write(key);
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+            key = pushed.poll();
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        int count = client.read(connection.input);
+        if (count < 0) {
+            close(key);
+            return;
+        }
+
+        ByteBuffer input = connection.input;
+        input.flip();
+        // the first byte of a connection decides which protocol it speaks
+        if (connection.mode == UNDECIDED && input.hasRemaining()) {
+            if (input.get(0) != BinaryProtocol.HELLO[0]) {
+                connection.mode = TEXT;
+            } else if (input.remaining() < BinaryProtocol.HELLO.length) {
+                input.compact();
+                return;
+            } else if (!isHello(input)) {
+                close(key);
+                return;
+            } else {
+                input.position(BinaryProtocol.HELLO.length);
+                connection.mode = BINARY;
+                connection.queue(ResponseBuffer.acquire().append(BinaryProtocol.HELLO), null);
+            }
+        }
+        int consumed = connection.mode == BINARY ? readFrames(connection, input) : readLines(connection, input);
+        if (consumed < 0) {
+            close(key);
+            return;
+        }
+        input.position(consumed);
+        input.compact();
+
+        // a partial line or frame which fills the whole buffer
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= MAX_COMMAND_LENGTH) {
+                close(key);
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(input.capacity() * 2, MAX_COMMAND_LENGTH));
+            input.flip();
+            larger.put(input);
+            connection.input = larger;
+        }
+
+        write(key);
+    }
+
+    // handles every complete line in the buffer, returns where the first incomplete one starts
+    private int readLines(Connection connection, ByteBuffer input) {
+        int lineStart = input.position();
+        for (int i = input.position(); i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && input.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                String incomingCommand = decode(input, lineStart, lineEnd);
+                lineStart = i + 1;
+                System.out.println("Received message from " + incomingCommand);
+                handleLine(connection, incomingCommand);
+            }
+        }
+        return lineStart;
+    }
+
+    // handles every complete frame in the buffer, returns where the first incomplete one starts or -1 for a frame which is too long
+    private int readFrames(Connection connection, ByteBuffer input) {
+        int frameStart = input.position();
+        while (input.limit() - frameStart >= Integer.BYTES) {
+            int length = input.getInt(frameStart);
+            if (length < 1 || length > MAX_COMMAND_LENGTH - Integer.BYTES) {
+                return -1;
+            }
+            if (input.limit() - frameStart - Integer.BYTES < length) {
+                break;
+            }
+            ByteBuffer payload = input.duplicate();
+            payload.position(frameStart + BinaryProtocol.HEADER_LENGTH).limit(frameStart + Integer.BYTES + length);
+            handleFrame(connection, input.get(frameStart + Integer.BYTES), payload);
+            frameStart += Integer.BYTES + length;
+        }
+        return frameStart;
+    }
+
+    private void handleFrame(Connection connection, byte opcode, ByteBuffer payload) {
+        switch (opcode) {
+            case BinaryProtocol.LOGIN:
+                String player = StandardCharsets.UTF_8.decode(payload).toString().trim();
+                if (player.isEmpty()) {
+                    connection.queue(errorFrame("[Error]: A player name is needed to log in\n"), null);
+                    break;
+                }
+                if (connection.subscribed) {
+                    unsubscribe(connection);
+                }
+                connection.player = player;
+                break;
+            case BinaryProtocol.SUBSCRIBE:
+                if (connection.player == null) {
+                    connection.queue(errorFrame("[Error]: Log in before subscribing\n"), null);
+                } else if (!connection.subscribed) {
+                    // it locks the player's location, so it waits its turn like a command
+                    String subscriber = connection.player;
+                    connection.run(() -> server.subscribe(subscriber, connection));
+                    connection.subscribed = true;
+                }
+                break;
+            case BinaryProtocol.COMMAND:
+                if (connection.player == null) {
+                    connection.queue(errorFrame("[Error]: Log in before sending commands\n"), null);
+                } else {
+                    // the input buffer is reused by the next read, so the worker gets a copy of the command
+                    ByteBuffer command = ByteBuffer.allocate(payload.remaining()).put(payload).flip();
+                    String commandPlayer = connection.player;
+                    // rendered straight into the frame
+                    ResponseBuffer response = ResponseBuffer.acquire().beginFrame(BinaryProtocol.RESPONSE);
+                    Save save = new Save(connection);
+                    connection.queue(response, save);
+                    connection.runCommand(save, response, () -> {
+                        server.handleCommand(commandPlayer, command, response, save);
+                        response.endFrame();
+                    });
+                }
+                break;
+            default:
+                connection.queue(errorFrame("[Error]: Unknown opcode " + opcode + "\n"), null);
+                break;
+        }
+    }
+
+    private static boolean isHello(ByteBuffer input) {
+        for (int i = 0; i < BinaryProtocol.HELLO.length; i++) {
+            if (input.get(input.position() + i) != BinaryProtocol.HELLO[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a command line, a batch header or a line of the pending batch
+    private void handleLine(Connection connection, String line) {
+        if (connection.batch != null) {
+            connection.batch.add(line);
+            if (connection.batch.size() == connection.batchSize) {
+                List<String> batch = connection.batch;
+                connection.batch = null;
+                // one save and one buffer for the whole batch
+                ResponseBuffer responses = ResponseBuffer.acquire();
+                Save save = new Save(connection);
+                connection.queue(responses, save);
+                connection.runCommand(save, responses, () -> {
+                    for (String response : server.handleBatch(batch, save)) {
+                        responses.append(response).append(RESPONSE_TRAILER);
+                    }
+                });
+            }
+            return;
+        }
+        int batchSize = CommandHandler.batchSize(line);
+        if (batchSize < 0) {
+            ResponseBuffer response = ResponseBuffer.acquire();
+            Save save = new Save(connection);
+            connection.queue(response, save);
+            connection.runCommand(save, response, () -> {
+                server.handleCommand(line, response, save);
+                response.append(RESPONSE_TRAILER);
+            });
+        } else if (batchSize == 0) {
+            connection.queue(ResponseBuffer.acquire().append(SessionServer.BATCH_ERROR).append(RESPONSE_TRAILER), null);
+        } else {
+            connection.batch = new ArrayList<>(batchSize);
+            connection.batchSize = batchSize;
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        while (!connection.output.isEmpty()) {
+            Outgoing next = connection.output.peek();
+            // responses go out in order, so everything behind an unsaved one waits too
+            if (!next.isSaved(connection.mode)) {
+                break;
+            }
+            if (!next.buffer.writeTo(client)) {
+                break;
+            }
+            connection.output.poll().buffer.release();
+        }
+
+        int interest = SelectionKey.OP_READ;
+        if (!connection.output.isEmpty()) {
+            // waiting for a worker or a save is woken up through the pushed queue, not by the socket
+            interest = connection.output.peek().save == null ? SelectionKey.OP_WRITE : 0;
+            if (connection.output.size() < MAX_PENDING_RESPONSES) {
+                interest |= SelectionKey.OP_READ;
+            }
+        }
+        key.interestOps(interest);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Connection) {
+            Connection connection = (Connection) key.attachment();
+            if (connection.subscribed) {
+                unsubscribe(connection);
+            }
+            // a save still running only sets its flags, but a worker still rendering hands its buffer back itself
+            while (!connection.output.isEmpty()) {
+                Outgoing outgoing = connection.output.poll();
+                if (outgoing.save == null || outgoing.save.abandon()) {
+                    outgoing.buffer.release();
+                }
+            }
+        }
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closed
+        }
+        System.out.println("Connection closed");
+    }
+
+    private void unsubscribe(Connection connection) {
+        String subscriber = connection.player;
+        connection.run(() -> server.unsubscribe(subscriber, connection));
+        connection.subscribed = false;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        ByteBuffer line = buffer.duplicate();
+        line.position(start).limit(end);
+        return StandardCharsets.UTF_8.decode(line).toString();
+    }
+
+    private static ResponseBuffer errorFrame(String message) {
+        return ResponseBuffer.acquire().beginFrame(BinaryProtocol.ERROR).append(message).endFrame();
+    }
+
+    private static final class Connection implements LocationFeed.Subscriber {
+        private final ConcurrentLinkedQueue<SelectionKey> pushed;
+        private final ExecutorService workers;
+        // commands waiting for the one being run, guarded by itself
+        private final ArrayDeque<Runnable> commands = new ArrayDeque<>();
+        private boolean running;
+        private SelectionKey key;
+        private int mode = UNDECIDED;
+        // the player a binary connection logged in as
+        private String player;
+        private boolean subscribed;
+        // frames pushed by the feed's thread, moved to the output by the selector thread
+        private final ConcurrentLinkedQueue<byte[]> events = new ConcurrentLinkedQueue<>();
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // pooled buffers, handed back once written
+        private final ArrayDeque<Outgoing> output = new ArrayDeque<>();
+        // the lines of a batch which hasn't been received in full yet
+        private List<String> batch;
+        private int batchSize;
+
+        private Connection(ConcurrentLinkedQueue<SelectionKey> pushed, ExecutorService workers) {
+            this.pushed = pushed;
+            this.workers = workers;
+        }
+
+        // runs a command rendering into the response, see run
+        private void runCommand(Save save, ResponseBuffer response, Runnable command) {
+            run(() -> {
+                try {
+                    command.run();
+                } finally {
+                    // the connection was closed in the meantime, nobody else will hand the buffer back
+                    if (save.handled()) {
+                        response.release();
+                    }
+                    wake();
+                }
+            });
+        }
+
+        // runs a task on a worker behind the earlier tasks of the connection
+        private void run(Runnable task) {
+            synchronized (commands) {
+                commands.add(task);
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            workers.execute(this::runNext);
+        }
+
+        // one command per task, so a connection with many queued doesn't keep a worker from the others
+        private void runNext() {
+            Runnable next;
+            synchronized (commands) {
+                next = commands.poll();
+            }
+            next.run();
+            synchronized (commands) {
+                if (commands.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+            workers.execute(this::runNext);
+        }
+
+        // save is null for a response which doesn't wait for anything
+        private void queue(ResponseBuffer response, Save save) {
+            output.add(new Outgoing(response, save));
+        }
+
+        @Override
+        public void push(byte[] frame) {
+            events.add(frame);
+            wake();
+        }
+
+        // has the selector thread look at the connection again
+        private void wake() {
+            pushed.add(key);
+            key.selector().wakeup();
+        }
+    }
+
+    // the save of a command's changes, completed by the handler, possibly on another thread
+    private static final class Save implements CommandHandler.Saved {
+        private final Connection connection;
+        private volatile boolean done;
+        private volatile boolean failed;
+        // set by the worker once the response is rendered, the rest guarded by the save
+        private volatile boolean rendered;
+        private boolean abandoned;
+
+        private Save(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void done(boolean saved) {
+            failed = !saved;
+            done = true;
+            // the key is only set once the connection is registered, long before any command
+            connection.wake();
+        }
+
+        // called by the worker, true if the connection was closed and the buffer is the worker's to release
+        private synchronized boolean handled() {
+            rendered = true;
+            return abandoned;
+        }
+
+        // called when the connection is closed, true if the worker is done with the buffer
+        private synchronized boolean abandon() {
+            abandoned = true;
+            return rendered;
+        }
+    }
+
+    // a queued response and the save it waits for, only touched by the selector thread
+    private static final class Outgoing {
+        private final ResponseBuffer buffer;
+        private Save save;
+
+        private Outgoing(ResponseBuffer buffer, Save save) {
+            this.buffer = buffer;
+            this.save = save;
+        }
+
+        // whether it can be sent, replacing it first if its changes couldn't be saved
+        private boolean isSaved(int mode) {
+            if (save == null) {
+                return true;
+            }
+            if (!save.rendered || !save.done) {
+                return false;
+            }
+            if (save.failed) {
+                buffer.clear();
+                if (mode == BINARY) {
+                    buffer.beginFrame(BinaryProtocol.RESPONSE).append(CommandHandler.SAVE_FAILED).endFrame();
+                } else {
+                    buffer.append(CommandHandler.SAVE_FAILED).append(RESPONSE_TRAILER);
+                }
+            }
+            save = null;
+            return true;
+        }
+    }
+}
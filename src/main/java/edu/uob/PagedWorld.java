@@ -0,0 +1,743 @@
+package edu.uob;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * World store for worlds too big to keep in memory, which pages regions of locations in from a
+ * directory of region files when they are first needed and out again under a budget.
+ *
+ * <p>{@link #partition} splits a world into regions of neighbouring locations (breadth first from
+ * the start location) and writes one file per region, plus an index from the hash of every
+ * location name to its region. Only that index stays in memory, a location is loaded together
+ * with the rest of its region when a command first looks it up.
+ *
+ * <p>Paths only hold the name and description of the location they lead to, so a loaded region
+ * never forces its neighbours in. Once more locations are loaded than the budget allows, the
+ * least recently used regions without players in them are evicted, after writing them back to
+ * their file if anything in them changed. The regions of the start location and the storeroom are
+ * never evicted. A command that looked a location up just before its region was evicted finds out
+ * through {@link #isResident} once it holds the location's lock, and looks it up again.
+ *
+ * <p>Players are saved with the region they are in, inventory and all. A small index of where
+ * players and the entities actions refer to were last written lets the server load the regions
+ * of its players when it starts, and page in the region of an entity an action produces. It also
+ * holds the locations actions have unlocked.
+ *
+ * <p>The region files are the saved state of a paged world, {@link #flush} writes back every
+ * changed region.
+ */
+public final class PagedWorld {
+
+    private static final int MAGIC = 0x53544752; // "STGR"
+    private static final int VERSION = 1;
+    private static final String INDEX = "world.index";
+    private static final String HOMES = "homes.index";
+
+    private final Path directory;
+    private final int budget;
+    private final String startLocation;
+    // name hashes in ascending order, and the region of each
+    private final long[] hashes;
+    private final int[] regionOf;
+    private final Set<Integer> pinned = new HashSet<>();
+    // the region every entity actions refer to was last written to, and the region of every player
+    private final Map<String, Integer> entityHomes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> playerHomes = new ConcurrentHashMap<>();
+
+    // the locations actions unlocked when the world was last flushed
+    private final List<String> savedUnlocked = new ArrayList<>();
+
+    private final Map<Integer, Region> regions = new ConcurrentHashMap<>();
+    // a region is read from its file holding one of these, not inside the map, so looking up and
+    // evicting other regions never waits for the disk
+    private final Object[] loadLocks = new Object[64];
+    private final Map<String, Location> resident = new ConcurrentHashMap<>();
+    private final AtomicInteger residentLocations = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong();
+
+    private EntityIndex entityIndex;
+    private LockStripes locationLocks;
+    private SymbolTable symbols;
+    // the players of the server, restored players are added as their region is loaded
+    private Map<String, Player> players;
+    // the locations the server's actions unlocked, written by flush
+    private List<String> unlocked = Collections.emptyList();
+
+    private static final class Region {
+        private final int id;
+        private final List<Location> locations;
+        // the changes of every location when it was loaded
+        private final long[] loadedChanges;
+        private volatile long lastUsed;
+
+        private Region(int id, List<Location> locations) {
+            this.id = id;
+            this.locations = locations;
+            this.loadedChanges = new long[locations.size()];
+            for (int i = 0; i < locations.size(); i++) {
+                loadedChanges[i] = locations.get(i).getChanges();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("Usage: PagedWorld <entities file> <actions file> <directory> <locations per region>");
+            return;
+        }
+        WorldBundle bundle = WorldBundle.parse(new File(args[0]), new File(args[1]));
+        int regions = partition(bundle, Path.of(args[2]), Integer.parseInt(args[3]));
+        System.out.println("Wrote " + bundle.getLocations().size() + " locations in " + regions + " regions to " + args[2]);
+    }
+
+    private PagedWorld(Path directory, int budget, String startLocation, long[] hashes, int[] regionOf) {
+        this.directory = directory;
+        this.budget = budget;
+        this.startLocation = startLocation;
+        this.hashes = hashes;
+        this.regionOf = regionOf;
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens a world written by {@link #partition}.
+     *
+     * @param directory The directory holding the index and the region files.
+     * @param budget How many locations may be loaded at once before regions are evicted.
+     * @return The world, with nothing loaded yet.
+     * @throws IOException If the index can't be read.
+     */
+    public static PagedWorld open(Path directory, int budget) throws IOException {
+        Path file = directory.resolve(INDEX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a world index: " + file);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported world index version " + version + ": " + file);
+            }
+            String startLocation = readString(in);
+            int count = in.getInt();
+            long[] hashes = new long[count];
+            int[] regionOf = new int[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = in.getLong();
+                regionOf[i] = in.getInt();
+            }
+            PagedWorld world = new PagedWorld(directory, budget, startLocation, hashes, regionOf);
+            world.pinned.add(world.regionOf(startLocation));
+            world.pinned.add(world.regionOf("storeroom"));
+            world.readHomes();
+            return world;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt world index: " + file, e);
+        }
+    }
+
+    private void readHomes() throws IOException {
+        Path file = directory.resolve(HOMES);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a homes index: " + file);
+            }
+            for (Map<String, Integer> homes : List.of(entityHomes, playerHomes)) {
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    homes.put(readString(in), in.getInt());
+                }
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                savedUnlocked.add(readString(in));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt homes index: " + file, e);
+        }
+    }
+
+    /**
+     * Called once by the server the world belongs to, which then gets the players and the unlocked
+     * locations saved with the world back.
+     *
+     * @param unlocked The server's unlocked locations, filled in here and written by {@link #flush}.
+     * @return The players of the world, with their regions loaded.
+     */
+    Collection<Player> attach(EntityIndex index, LockStripes locks, SymbolTable symbols, Map<String, Player> players, List<String> unlocked) {
+        this.entityIndex = index;
+        this.locationLocks = locks;
+        this.symbols = symbols;
+        this.players = players;
+        this.unlocked = unlocked;
+        unlocked.addAll(savedUnlocked);
+        List<Player> restored = new ArrayList<>();
+        for (Map.Entry<String, Integer> home : playerHomes.entrySet()) {
+            loaded(home.getValue());
+            Player player = players.get(home.getKey());
+            if (player != null) {
+                restored.add(player);
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Loads the region an entity was last written to, for an entity which isn't in the index
+     * because its region was paged out.
+     *
+     * @param name The name of the entity.
+     */
+    public void pageIn(String name) {
+        Integer region = entityHomes.get(name);
+        if (region != null) {
+            loaded(region);
+        }
+    }
+
+    public String getStartLocation() {
+        return startLocation;
+    }
+
+    // whether there is a location with this name, without loading it
+    public boolean contains(String name) {
+        return regionOf(name) >= 0;
+    }
+
+    /**
+     * Looks up a location, loading its region if needed.
+     *
+     * @param name The name of the location.
+     * @return The location, or null if there is none with this name.
+     */
+    public Location get(String name) {
+        int region = regionOf(name);
+        if (region < 0) {
+            return null;
+        }
+        while (true) {
+            Region loaded = loaded(region);
+            Location location = resident.get(name);
+            // unless the region was evicted again before we looked, a missing location only shares
+            // its hash with one of the region's
+            if (location != null || regions.get(region) == loaded) {
+                return location;
+            }
+        }
+    }
+
+    // whether a location looked up earlier is still the one in memory, call it holding its lock
+    public boolean isResident(Location location) {
+        return location == null || resident.get(location.getName()) == location;
+    }
+
+    public Collection<Location> getResidentLocations() {
+        return Collections.unmodifiableCollection(resident.values());
+    }
+
+    /**
+     * Evicts the least recently used regions without players in them until the budget is met.
+     * Call it without holding any location lock.
+     */
+    public void evictColdRegions() {
+        Set<Integer> busy = new HashSet<>();
+        while (residentLocations.get() > budget) {
+            Region coldest = null;
+            for (Region region : regions.values()) {
+                if (!pinned.contains(region.id) && !busy.contains(region.id) && (coldest == null || region.lastUsed < coldest.lastUsed)) {
+                    coldest = region;
+                }
+            }
+            if (coldest == null) {
+                return;
+            }
+            if (!evict(coldest)) {
+                busy.add(coldest.id);
+            }
+        }
+    }
+
+    /**
+     * Writes every changed region back to its file.
+     *
+     * @throws IOException If a region can't be written.
+     */
+    public void flush() throws IOException {
+        Map<String, Integer> withPlayers = new HashMap<>();
+        for (Region region : regions.values()) {
+            int[] held = locationLocks.lockAll(region.locations);
+            try {
+                if (regions.get(region.id) == region && changed(region)) {
+                    writeRegion(region);
+                }
+                for (Location location : region.locations) {
+                    location.getPlayers().forEach(player -> withPlayers.put(player.getName(), region.id));
+                }
+            } finally {
+                locationLocks.unlockAll(held);
+            }
+        }
+        // regions with players in them are never evicted, so these are all of them
+        playerHomes.keySet().retainAll(withPlayers.keySet());
+        playerHomes.putAll(withPlayers);
+        writeHomes(directory, entityHomes, playerHomes, unlocked);
+    }
+
+    // the region, loaded first unless it already is
+    private Region loaded(int id) {
+        Region region = regions.get(id);
+        if (region == null) {
+            synchronized (loadLocks[id & (loadLocks.length - 1)]) {
+                region = regions.get(id);
+                if (region == null) {
+                    region = load(id);
+                    regions.put(id, region);
+                }
+            }
+        }
+        region.lastUsed = clock.incrementAndGet();
+        return region;
+    }
+
+    private Region load(int id) {
+        Path file = regionFile(directory, id);
+        List<Location> locations = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a region file: " + file);
+            }
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                Location location = new Location(strings[in.getInt()], strings[in.getInt()]);
+                int characters = in.getInt();
+                for (int j = 0; j < characters; j++) {
+                    location.addCharacter(symbols.tag(new Character(strings[in.getInt()], strings[in.getInt()])));
+                }
+                int artefacts = in.getInt();
+                for (int j = 0; j < artefacts; j++) {
+                    location.addArtefact(symbols.tag(new Artefact(strings[in.getInt()], strings[in.getInt()])));
+                }
+                int furniture = in.getInt();
+                for (int j = 0; j < furniture; j++) {
+                    location.addFurniture(symbols.tag(new Furniture(strings[in.getInt()], strings[in.getInt()])));
+                }
+                int players = in.getInt();
+                for (int j = 0; j < players; j++) {
+                    Player player = new Player(strings[in.getInt()]);
+                    player.setLocation(location.getName());
+                    player.setHealth(in.getInt());
+                    int inventory = in.getInt();
+                    for (int k = 0; k < inventory; k++) {
+                        player.addInventory(symbols.tag(new Artefact(strings[in.getInt()], strings[in.getInt()])));
+                    }
+                    location.addCharacter(player);
+                }
+                int to = in.getInt();
+                for (int j = 0; j < to; j++) {
+                    location.addTo(strings[in.getInt()], strings[in.getInt()]);
+                }
+                int from = in.getInt();
+                for (int j = 0; j < from; j++) {
+                    location.addFrom(strings[in.getInt()], strings[in.getInt()]);
+                }
+                locations.add(location);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load region " + file, e);
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Corrupt region file: " + file, e));
+        }
+
+        // nobody else can see these yet, so they are indexed before they are published
+        for (Location location : locations) {
+            location.getArtefacts().forEach(artefact -> entityIndex.placeIn(artefact, location));
+            location.getFurniture().forEach(furniture -> entityIndex.placeIn(furniture, location));
+            for (Character character : location.getCharacters()) {
+                if (!(character instanceof Player)) {
+                    entityIndex.placeIn(character, location);
+                }
+            }
+            for (Player player : location.getPlayers()) {
+                // a region written before the player moved on, the player is somewhere else by now
+                if (players.putIfAbsent(player.getName(), player) != null) {
+                    location.removePlayer(player.getName());
+                    continue;
+                }
+                player.getInventory().forEach(artefact -> entityIndex.heldBy(artefact, player));
+            }
+            resident.put(location.getName(), location);
+        }
+        residentLocations.addAndGet(locations.size());
+        return new Region(id, locations);
+    }
+
+    private boolean evict(Region region) {
+        int[] held = locationLocks.lockAll(region.locations);
+        try {
+            for (Location location : region.locations) {
+                if (!location.getPlayers().isEmpty()) {
+                    return false;
+                }
+            }
+            if (changed(region)) {
+                writeRegion(region);
+            }
+            // commands holding one of these locations notice through isResident
+            regions.remove(region.id);
+            // the region may already be loaded again, which must not be undone
+            for (Location location : region.locations) {
+                resident.remove(location.getName(), location);
+                location.getArtefacts().forEach(artefact -> entityIndex.removeFrom(artefact, location));
+                location.getFurniture().forEach(furniture -> entityIndex.removeFrom(furniture, location));
+                location.getCharacters().forEach(character -> entityIndex.removeFrom(character, location));
+            }
+            residentLocations.addAndGet(-region.locations.size());
+            return true;
+        } catch (IOException e) {
+            // keep it loaded rather than lose the changes
+            System.out.println("Failed to write back region " + region.id + ": " + e.getMessage());
+            return false;
+        } finally {
+            locationLocks.unlockAll(held);
+        }
+    }
+
+    private static boolean changed(Region region) {
+        for (int i = 0; i < region.locations.size(); i++) {
+            // health and inventories change without the location changing
+            if (region.locations.get(i).getChanges() != region.loadedChanges[i] || !region.locations.get(i).getPlayers().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // with the locks of every location in the region held
+    private void writeRegion(Region region) throws IOException {
+        writeRegion(regionFile(directory, region.id), region.locations);
+        for (int i = 0; i < region.locations.size(); i++) {
+            Location location = region.locations.get(i);
+            region.loadedChanges[i] = location.getChanges();
+            for (Collection<? extends GameEntity> entities : List.of(location.getCharacters(), location.getArtefacts(), location.getFurniture())) {
+                for (GameEntity entity : entities) {
+                    if (entity.getId() >= 0) {
+                        entityHomes.put(entity.getName(), region.id);
+                    }
+                }
+            }
+            for (Player player : location.getPlayers()) {
+                for (Artefact artefact : player.getInventory()) {
+                    if (artefact.getId() >= 0) {
+                        entityHomes.put(artefact.getName(), region.id);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeRegion(Path file, List<Location> locations) throws IOException {
+        // every name and description is written once, everything else refers to it by index
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Location location : locations) {
+            intern(location.getName(), indexes, strings);
+            intern(location.getDescription(), indexes, strings);
+            for (Collection<? extends GameEntity> entities : List.of(location.getCharacters(), location.getArtefacts(), location.getFurniture())) {
+                for (GameEntity entity : entities) {
+                    intern(entity.getName(), indexes, strings);
+                    intern(entity.getDescription(), indexes, strings);
+                }
+            }
+            for (Player player : location.getPlayers()) {
+                for (Artefact artefact : player.getInventory()) {
+                    intern(artefact.getName(), indexes, strings);
+                    intern(artefact.getDescription(), indexes, strings);
+                }
+            }
+            for (String path : location.getTo()) {
+                intern(path, indexes, strings);
+                intern(location.getPathDescription(path), indexes, strings);
+            }
+            for (String path : location.getFrom()) {
+                intern(path, indexes, strings);
+                intern(location.getPathDescription(path), indexes, strings);
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(out, string);
+            }
+            out.writeInt(locations.size());
+            for (Location location : locations) {
+                out.writeInt(indexes.get(location.getName()));
+                out.writeInt(indexes.get(location.getDescription()));
+                // players are written after the other entities, with their inventories
+                List<Character> characters = new ArrayList<>();
+                for (Character character : location.getCharacters()) {
+                    if (!(character instanceof Player)) {
+                        characters.add(character);
+                    }
+                }
+                writeEntities(out, characters, indexes);
+                writeEntities(out, location.getArtefacts(), indexes);
+                writeEntities(out, location.getFurniture(), indexes);
+                out.writeInt(location.getPlayers().size());
+                for (Player player : location.getPlayers()) {
+                    out.writeInt(indexes.get(player.getName()));
+                    out.writeInt(player.getHealth());
+                    writeEntities(out, player.getInventory(), indexes);
+                }
+                out.writeInt(location.getTo().size());
+                for (String path : location.getTo()) {
+                    out.writeInt(indexes.get(path));
+                    out.writeInt(indexes.get(location.getPathDescription(path)));
+                }
+                out.writeInt(location.getFrom().size());
+                for (String path : location.getFrom()) {
+                    out.writeInt(indexes.get(path));
+                    out.writeInt(indexes.get(location.getPathDescription(path)));
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Splits a world into regions of neighbouring locations and writes them, with their index, to
+     * a directory which {@link #open} can then page them in from.
+     *
+     * @param bundle The world.
+     * @param directory The directory to write to, created if needed.
+     * @param regionSize How many locations go into each region.
+     * @return The number of regions written.
+     * @throws IOException If the files can't be written, or two location names have the same hash.
+     */
+    public static int partition(WorldBundle bundle, Path directory, int regionSize) throws IOException {
+        Files.createDirectories(directory);
+        // the world as the server would build it, paths and all
+        Map<String, Location> locations = new LinkedHashMap<>();
+        for (WorldBundle.LocationDefinition definition : bundle.getLocations()) {
+            Location location = new Location(definition.getName(), definition.getDescription());
+            definition.getCharacters().forEach(entity -> location.addCharacter(new Character(entity.getName(), entity.getDescription())));
+            definition.getArtefacts().forEach(entity -> location.addArtefact(new Artefact(entity.getName(), entity.getDescription())));
+            definition.getFurniture().forEach(entity -> location.addFurniture(new Furniture(entity.getName(), entity.getDescription())));
+            locations.put(location.getName(), location);
+        }
+        for (String[] path : bundle.getPaths()) {
+            Location from = locations.get(path[0]);
+            Location to = locations.get(path[1]);
+            if (from != null && to != null) {
+                from.addTo(to);
+                to.addFrom(from);
+            }
+        }
+        if (locations.isEmpty()) {
+            throw new IOException("The world has no locations");
+        }
+
+        // breadth first from the start location, so neighbours tend to share a region
+        List<Location> order = new ArrayList<>(locations.size());
+        Set<String> seen = new HashSet<>();
+        for (Location root : locations.values()) {
+            if (!seen.add(root.getName())) {
+                continue;
+            }
+            ArrayDeque<Location> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                Location location = queue.poll();
+                order.add(location);
+                for (String next : location.getTo()) {
+                    if (seen.add(next)) {
+                        queue.add(locations.get(next));
+                    }
+                }
+            }
+        }
+
+        // only the entities actions refer to are ever paged in by name
+        Set<String> referred = new HashSet<>();
+        for (WorldBundle.ActionDefinition action : bundle.getActions()) {
+            referred.addAll(action.getSubjects());
+            referred.addAll(action.getConsumed());
+            referred.addAll(action.getProduced());
+        }
+        Map<String, Integer> entityHomes = new HashMap<>();
+
+        int regions = (order.size() + regionSize - 1) / regionSize;
+        long[] hashes = new long[order.size()];
+        int[] regionOf = new int[order.size()];
+        Map<Long, String> names = new HashMap<>();
+        for (int region = 0; region < regions; region++) {
+            List<Location> members = order.subList(region * regionSize, Math.min(order.size(), (region + 1) * regionSize));
+            writeRegion(regionFile(directory, region), members);
+            for (int i = 0; i < members.size(); i++) {
+                Location member = members.get(i);
+                for (Collection<? extends GameEntity> entities : List.of(member.getCharacters(), member.getArtefacts(), member.getFurniture())) {
+                    for (GameEntity entity : entities) {
+                        if (referred.contains(entity.getName())) {
+                            entityHomes.put(entity.getName(), region);
+                        }
+                    }
+                }
+                String name = member.getName();
+                long hash = hash(name);
+                String clash = names.put(hash, name);
+                if (clash != null) {
+                    throw new IOException("Locations " + clash + " and " + name + " have the same hash, rename one of them");
+                }
+                hashes[region * regionSize + i] = hash;
+                regionOf[region * regionSize + i] = region;
+            }
+        }
+
+        // sorted by hash for the binary search in regionOf
+        Integer[] sorted = new Integer[order.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        Path file = directory.resolve(INDEX);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, order.get(0).getName());
+            out.writeInt(sorted.length);
+            for (int i : sorted) {
+                out.writeLong(hashes[i]);
+                out.writeInt(regionOf[i]);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeHomes(directory, entityHomes, Collections.emptyMap(), Collections.emptyList());
+        return regions;
+    }
+
+    private static void writeHomes(Path directory, Map<String, Integer> entityHomes, Map<String, Integer> playerHomes, List<String> unlocked) throws IOException {
+        Path file = directory.resolve(HOMES);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map<String, Integer> homes : List.of(entityHomes, playerHomes)) {
+                // a snapshot, entities keep moving while it is written
+                Map<String, Integer> copy = new HashMap<>(homes);
+                out.writeInt(copy.size());
+                for (Map.Entry<String, Integer> home : copy.entrySet()) {
+                    writeString(out, home.getKey());
+                    out.writeInt(home.getValue());
+                }
+            }
+            List<String> copy = List.copyOf(unlocked);
+            out.writeInt(copy.size());
+            for (String name : copy) {
+                writeString(out, name);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the region a location is in, or -1 if there is no such location
+    private int regionOf(String name) {
+        int found = Arrays.binarySearch(hashes, hash(name));
+        return found < 0 ? -1 : regionOf[found];
+    }
+
+    // 64 bit FNV-1a, wide enough that names practically never collide
+    static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static Path regionFile(Path directory, int region) {
+        return directory.resolve(String.format("%08d.region", region));
+    }
+
+    private static void intern(String string, Map<String, Integer> indexes, List<String> strings) {
+        if (!indexes.containsKey(string)) {
+            indexes.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void writeEntities(DataOutputStream out, Collection<? extends GameEntity> entities, Map<String, Integer> indexes) throws IOException {
+        out.writeInt(entities.size());
+        for (GameEntity entity : entities) {
+            out.writeInt(indexes.get(entity.getName()));
+            out.writeInt(indexes.get(entity.getDescription()));
+        }
+    }
+
+    // a missing description is written as -1
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer bytes = in.slice();
+        bytes.limit(length);
+        in.position(in.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
@@ -1,19 +1,22 @@
 package edu.uob;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Player extends Character {
 
     private String location;
     private int health;
-    private List<Artefact> inventory;
-    private static List<Location> unlocked_locations = new ArrayList<>();
+    // keyed by name, in the order the artefacts were picked up
+    private final Map<String, Artefact> inventory;
+    // the IDs of every artefact in the inventory
+    private final PresenceBits presence = new PresenceBits();
 
     public Player(String name) {
         super(name, "A player");
         this.health = 3;
-        this.inventory = new ArrayList<>();
+        this.inventory = new LinkedHashMap<>();
     }
 
     public void setLocation(String location) {
@@ -25,23 +28,31 @@ public class Player extends Character {
     }
 
     public void addInventory(Artefact artefact) {
-        this.inventory.add(artefact);
+        this.inventory.put(artefact.getName(), artefact);
+        this.presence.add(artefact.getId());
     }
 
     public void removeInventory(String artefact) {
-        this.inventory.removeIf(obj -> obj.getName().equals(artefact));
+        Artefact removed = this.inventory.remove(artefact);
+        if (removed != null) {
+            presence.remove(removed.getId());
+        }
+    }
+
+    public Artefact getInventoryItem(String artefact) {
+        return inventory.get(artefact);
     }
 
-    public static void addUnlockedLocation(Location location) {
-        unlocked_locations.add(location);
+    public boolean hasInventoryItem(String artefact) {
+        return inventory.containsKey(artefact);
     }
 
-    public static List<Location> getUnlocked_locations() {
-        return unlocked_locations;
+    PresenceBits getPresence() {
+        return presence;
     }
 
     public List<Artefact> getInventory() {
-        return inventory;
+        return List.copyOf(inventory.values());
     }
 
     public void healthUp() {
@@ -56,19 +67,30 @@ public class Player extends Character {
         }
     }
 
+    public void setHealth(int health) {
+        this.health = Math.max(0, Math.min(3, health));
+    }
+
     public int getHealth() {
         return health;
     }
 
     public String displayInventory() {
+        StringBuilder output = new StringBuilder();
+        displayInventory(ResponseSink.of(output));
+        return output.toString();
+    }
+
+    // renders the inventory straight into the response
+    public void displayInventory(ResponseSink output) {
         if(inventory.size() == 0) {
-            return "Your inventory is empty\n";
+            output.append("Your inventory is empty\n");
+            return;
         }
 
-        String output = "Inventory contains the following items: \n";
-        for (Artefact artefact : inventory) {
-            output += " * " + artefact.toString() + "\n";
+        output.append("Inventory contains the following items: \n");
+        for (Artefact artefact : inventory.values()) {
+            output.append(" * ").append(artefact.toString()).append('\n');
         }
-        return output;
     }
 }
@@ -0,0 +1,65 @@
+package edu.uob;
+
+import java.util.Arrays;
+
+/**
+ * The set of entity IDs (see {@link SymbolTable}) present in a location or an inventory, one bit
+ * per ID, so checking that an action's subjects are all at hand takes a few word-wise ANDs.
+ *
+ * <p>Not thread-safe, it is guarded by the lock of the location or player it belongs to.
+ */
+final class PresenceBits {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] words = EMPTY;
+
+    void add(int id) {
+        if (id < 0) {
+            return;
+        }
+        int word = id >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, word + 1);
+        }
+        words[word] |= 1L << id;
+    }
+
+    void remove(int id) {
+        int word = id >>> 6;
+        if (id >= 0 && word < words.length) {
+            words[word] &= ~(1L << id);
+        }
+    }
+
+    boolean contains(int id) {
+        int word = id >>> 6;
+        return id >= 0 && word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    // the bits of a set of IDs, for required entities which never change
+    static long[] of(int... ids) {
+        long[] bits = EMPTY;
+        for (int id : ids) {
+            int word = id >>> 6;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, word + 1);
+            }
+            bits[word] |= 1L << id;
+        }
+        return bits;
+    }
+
+    // whether every required bit is in at least one of the two sets
+    static boolean covers(long[] required, PresenceBits first, PresenceBits second) {
+        long[] a = first.words;
+        long[] b = second.words;
+        for (int i = 0; i < required.length; i++) {
+            long present = (i < a.length ? a[i] : 0) | (i < b.length ? b[i] : 0);
+            if ((required[i] & ~present) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
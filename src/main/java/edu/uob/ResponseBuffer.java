@@ -0,0 +1,138 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A reusable output buffer responses are encoded into as UTF-8 while they are rendered, and which
+ * is then written straight to the socket.
+ *
+ * <p>Buffers are taken from a shared pool with {@link #acquire()} and handed back with
+ * {@link #release()} once written, so a server answering many commands doesn't allocate a String,
+ * a char[] and a byte[] per response. A buffer is filled, then drained, then cleared again, it is
+ * not safe to share between threads while in use.
+ */
+public final class ResponseBuffer implements ResponseSink {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // buffers grown past this by a huge response aren't kept around
+    static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final ArrayBlockingQueue<ResponseBuffer> POOL = new ArrayBlockingQueue<>(256);
+
+    private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private boolean draining;
+    // where the length of the binary frame being rendered goes, -1 outside of a frame
+    private int frameStart = -1;
+
+    public static ResponseBuffer acquire() {
+        ResponseBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : new ResponseBuffer();
+    }
+
+    // clears the buffer and hands it back to the pool, it must not be used afterwards
+    public void release() {
+        clear();
+        if (bytes.capacity() <= MAX_POOLED_CAPACITY) {
+            POOL.offer(this);
+        }
+    }
+
+    public void clear() {
+        bytes.clear();
+        draining = false;
+        frameStart = -1;
+    }
+
+    @Override
+    public ResponseBuffer append(CharSequence text) {
+        // no char takes more than three bytes, a surrogate pair takes four for two chars
+        ensureRemaining(text.length() * 3);
+        BinaryProtocol.putUtf8(text, bytes);
+        return this;
+    }
+
+    @Override
+    public ResponseBuffer append(char c) {
+        if (c < 0x80) {
+            ensureRemaining(1);
+            bytes.put((byte) c);
+            return this;
+        }
+        return append(String.valueOf(c));
+    }
+
+    public ResponseBuffer append(byte[] raw) {
+        ensureRemaining(raw.length);
+        bytes.put(raw);
+        return this;
+    }
+
+    // starts a binary protocol frame, whatever is appended until endFrame() is its payload
+    public ResponseBuffer beginFrame(byte opcode) {
+        ensureRemaining(BinaryProtocol.HEADER_LENGTH);
+        frameStart = bytes.position();
+        bytes.putInt(0).put(opcode);
+        return this;
+    }
+
+    public ResponseBuffer endFrame() {
+        bytes.putInt(frameStart, bytes.position() - frameStart - Integer.BYTES);
+        frameStart = -1;
+        return this;
+    }
+
+    // the number of bytes rendered and not written yet
+    public int size() {
+        return draining ? bytes.remaining() : bytes.position();
+    }
+
+    /**
+     * Writes as much of the buffer as the channel takes.
+     *
+     * @return Whether everything has been written.
+     */
+    public boolean writeTo(WritableByteChannel channel) throws IOException {
+        drain();
+        channel.write(bytes);
+        return !bytes.hasRemaining();
+    }
+
+    // writes everything, then clears the buffer for the next response
+    public void writeTo(OutputStream out) throws IOException {
+        drain();
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        clear();
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer content = bytes.duplicate();
+        if (!draining) {
+            content.flip();
+        }
+        return StandardCharsets.UTF_8.decode(content).toString();
+    }
+
+    private void drain() {
+        if (!draining) {
+            bytes.flip();
+            draining = true;
+        }
+    }
+
+    private void ensureRemaining(int needed) {
+        if (draining) {
+            throw new IllegalStateException("The buffer is being written");
+        }
+        if (bytes.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + needed));
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package edu.uob;
+
+/**
+ * Where a command handler renders its response to, so long responses such as "look" in a busy
+ * location or a large inventory are written straight to their destination instead of first being
+ * assembled into a String.
+ *
+ * <p>{@link ResponseBuffer} encodes the response straight into a pooled buffer for a socket, and
+ * {@link #of(StringBuilder)} collects it for callers which want a String.
+ */
+public interface ResponseSink {
+
+    ResponseSink append(CharSequence text);
+
+    ResponseSink append(char c);
+
+    static ResponseSink of(StringBuilder builder) {
+        return new ResponseSink() {
+            @Override
+            public ResponseSink append(CharSequence text) {
+                builder.append(text);
+                return this;
+            }
+
+            @Override
+            public ResponseSink append(char c) {
+                builder.append(c);
+                return this;
+            }
+        };
+    }
+}
@@ -0,0 +1,226 @@
+package edu.uob;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of a running game: how long each type of command takes, which
+ * errors players get back, how many players joined and how often the game changes.
+ *
+ * <p>Everything is recorded without locks, and without allocating once each error message has
+ * been seen. The numbers can be read over JMX (see {@link #register}) or printed periodically
+ * (see {@link #scheduleDump}). The worlds of a {@link WorldHost} share one instance.
+ */
+public final class ServerMetrics implements ServerMetricsMXBean {
+
+    static final int LOOK = 0;
+    static final int INVENTORY = 1;
+    static final int GET = 2;
+    static final int DROP = 3;
+    static final int GOTO = 4;
+    static final int HEALTH = 5;
+    // the first extended type, then one per keyphrase in the order of the trigger matcher
+    static final int EXTENDED = 6;
+
+    private final String[] typeNames;
+    private final LatencyHistogram[] latencies;
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder players = new LongAdder();
+    private final LongAdder mutations = new LongAdder();
+
+    public ServerMetrics(GameContent content) {
+        TriggerMatcher matcher = content.getTriggerMatcher();
+        int keyphrases = content.getActions().size();
+        typeNames = new String[EXTENDED + keyphrases + 1];
+        typeNames[LOOK] = "look";
+        typeNames[INVENTORY] = "inv";
+        typeNames[GET] = "get";
+        typeNames[DROP] = "drop";
+        typeNames[GOTO] = "goto";
+        typeNames[HEALTH] = "health";
+        for (int k = 0; k < keyphrases; k++) {
+            typeNames[EXTENDED + k] = matcher.keyphrase(k);
+        }
+        typeNames[typeNames.length - 1] = "invalid";
+        latencies = new LatencyHistogram[typeNames.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    // the type of a basic command word, or the invalid type
+    int basicType(String word) {
+        if (word == null) {
+            return invalidType();
+        }
+        switch (word) {
+            case "look":
+                return LOOK;
+            case "inventory":
+            case "inv":
+                return INVENTORY;
+            case "get":
+            case "take":
+                return GET;
+            case "drop":
+                return DROP;
+            case "goto":
+                return GOTO;
+            case "health":
+                return HEALTH;
+            default:
+                return invalidType();
+        }
+    }
+
+    int invalidType() {
+        return typeNames.length - 1;
+    }
+
+    // the response is null when it was rendered straight into a sink, which errors never are
+    void record(int type, long nanos, String response) {
+        latencies[type].record(nanos);
+        if (response != null && response.startsWith("[Error]")) {
+            LongAdder count = errors.get(response);
+            if (count == null) {
+                count = errors.computeIfAbsent(response, key -> new LongAdder());
+            }
+            count.increment();
+        }
+    }
+
+    void playersJoined(int count) {
+        players.add(count);
+    }
+
+    void worldChanged() {
+        mutations.increment();
+    }
+
+    /**
+     * Makes the metrics readable over JMX.
+     *
+     * @param name Tells the metrics of several servers in one JVM apart.
+     * @throws JMException If a server with the same name is already registered.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("edu.uob:type=ServerMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * Prints every metric at a fixed interval, along with the rate of mutations since the last print.
+     *
+     * @param intervalSeconds How often to print.
+     */
+    public void scheduleDump(long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] lastMutations = new long[1];
+        scheduler.scheduleAtFixedRate(() -> {
+            long total = getMutations();
+            System.out.print(dump() + String.format("mutations/s %.1f%n", (total - lastMutations[0]) / (double) intervalSeconds));
+            lastMutations[0] = total;
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // every command type that was used, every error and the counters, one per line
+    String dump() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < latencies.length; i++) {
+            LatencyHistogram histogram = latencies[i];
+            long count = histogram.getCount();
+            if (count > 0) {
+                out.append(String.format("command %s count=%d p50=%dus p99=%dus p99.9=%dus max=%dus%n", typeNames[i], count,
+                        micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                        micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMax())));
+            }
+        }
+        getErrorCounts().forEach((error, count) -> out.append(String.format("error \"%s\" count=%d%n", error, count)));
+        out.append(String.format("players %d%nmutations %d%n", getPlayers(), getMutations()));
+        return out.toString();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < latencies.length; i++) {
+            counts.put(typeNames[i], latencies[i].getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Micros() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Micros() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP999Micros() {
+        return percentiles(99.9);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxMicros() {
+        Map<String, Long> max = new TreeMap<>();
+        for (int i = 0; i < latencies.length; i++) {
+            max.put(typeNames[i], micros(latencies[i].getMax()));
+        }
+        return max;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((error, count) -> counts.put(error.trim(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getPlayers() {
+        return players.sum();
+    }
+
+    @Override
+    public long getMutations() {
+        return mutations.sum();
+    }
+
+    // the histogram of a command type, null if there is no such type
+    LatencyHistogram getLatency(String type) {
+        for (int i = 0; i < typeNames.length; i++) {
+            if (typeNames[i].equals(type)) {
+                return latencies[i];
+            }
+        }
+        return null;
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Map<String, Long> values = new TreeMap<>();
+        for (int i = 0; i < latencies.length; i++) {
+            values.put(typeNames[i], micros(latencies[i].getValueAtPercentile(percentile)));
+        }
+        return values;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,28 @@
+package edu.uob;
+
+import java.util.Map;
+
+/**
+ * What {@link ServerMetrics} exposes over JMX. Latencies are keyed by command type: the basic
+ * commands, every trigger keyphrase, and "invalid" for commands which matched neither.
+ */
+public interface ServerMetricsMXBean {
+
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Long> getLatencyP50Micros();
+
+    Map<String, Long> getLatencyP99Micros();
+
+    Map<String, Long> getLatencyP999Micros();
+
+    Map<String, Long> getLatencyMaxMicros();
+
+    // keyed by the error message sent back to the player
+    Map<String, Long> getErrorCounts();
+
+    long getPlayers();
+
+    // commands which changed the game
+    long getMutations();
+}
@@ -0,0 +1,103 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Thread-per-session server mode.
+ *
+ * <p>Each connection is served by its own thread for as long as the client stays connected. On a
+ * Java 21+ runtime these are virtual threads, so tens of thousands of idle sessions are cheap;
+ * on older runtimes a cached platform thread pool is used instead.
+ */
+public final class SessionServer {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final String RESPONSE_TRAILER = "\n" + END_OF_TRANSMISSION + "\n";
+    // responses are written once this much is waiting even if more commands are, so a client which
+    // keeps pipelining still gets answers and the buffer never grows too big to go back to the pool
+    private static final int FLUSH_THRESHOLD = ResponseBuffer.MAX_POOLED_CAPACITY / 2;
+    static final String BATCH_ERROR = "[Error]: A batch has to hold between 1 and " + CommandHandler.MAX_BATCH + " commands\n";
+
+    private final CommandHandler server;
+
+    public SessionServer(CommandHandler server) {
+        this.server = server;
+    }
+
+    public void listenOn(int portNumber) throws IOException {
+        ExecutorService sessions = newSessionExecutor();
+        try (ServerSocket s = new ServerSocket(portNumber)) {
+            System.out.println("Server listening on port " + portNumber + " (sessions)");
+            while (!Thread.interrupted()) {
+                Socket client = s.accept();
+                sessions.execute(() -> handleSession(client));
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    private void handleSession(Socket client) {
+        // one pooled buffer for the whole session, the responses of pipelined commands collect in it
+        ResponseBuffer output = ResponseBuffer.acquire();
+        try (Socket s = client;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        OutputStream out = s.getOutputStream()) {
+            System.out.println("Connection established");
+            String incomingCommand = reader.readLine();
+            while (incomingCommand != null) {
+                System.out.println("Received message from " + incomingCommand);
+                int batchSize = CommandHandler.batchSize(incomingCommand);
+                if (batchSize < 0) {
+                    server.handleCommand(incomingCommand, output);
+                    output.append(RESPONSE_TRAILER);
+                } else if (batchSize == 0) {
+                    output.append(BATCH_ERROR).append(RESPONSE_TRAILER);
+                } else {
+                    List<String> batch = new ArrayList<>(batchSize);
+                    while (batch.size() < batchSize && (incomingCommand = reader.readLine()) != null) {
+                        batch.add(incomingCommand);
+                    }
+                    if (batch.size() < batchSize) {
+                        // the client went away in the middle of the batch
+                        break;
+                    }
+                    for (String response : server.handleBatch(batch)) {
+                        output.append(response).append(RESPONSE_TRAILER);
+                    }
+                }
+                // only write once every pipelined command has been answered, or enough have been
+                if (!reader.ready() || output.size() >= FLUSH_THRESHOLD) {
+                    output.writeTo(out);
+                }
+                incomingCommand = reader.readLine();
+            }
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            output.release();
+        }
+        System.out.println("Connection closed");
+    }
+
+    static ExecutorService newSessionExecutor() {
+        try {
+            // virtual threads are only available from Java 21, the build still targets 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
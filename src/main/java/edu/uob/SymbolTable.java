@@ -0,0 +1,63 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int IDs for the names actions refer to, so the engine can compare and index them as ints
+ * and only deals with strings when parsing commands and rendering responses.
+ *
+ * <p>Only the action vocabulary is interned, while the content is loaded, so the table is the same
+ * size for every world played from it. Any other name (players, entities no action mentions, the
+ * regions of a paged world) has no ID and is only ever looked up by name. IDs are never reused or
+ * changed, and looking one up never locks.
+ */
+public final class SymbolTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // guarded by this for writes, an ID is only handed out once its name is in the array
+    private volatile String[] names = new String[64];
+    private int size;
+
+    // the ID of a name, assigning the next one if it has none yet
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                String[] current = names;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size] = name;
+                names = current;
+                id = size++;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // gives a freshly created entity the ID of its name, or leaves it at -1 when no action refers to it
+    <T extends GameEntity> T tag(T entity) {
+        entity.setId(idOf(entity.getName()));
+        return entity;
+    }
+}
@@ -0,0 +1,160 @@
+package edu.uob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over every trigger keyphrase of the loaded actions.
+ *
+ * <p>The keyphrases are compiled once into a dense transition table, so a command is matched in a
+ * single pass whatever the number of keyphrases. Only whole words count as a match, and when
+ * several triggers appear the one starting first wins (the longest one if they start together).
+ */
+public final class TriggerMatcher {
+
+    private static final int ROOT = 0;
+
+    private final String[] keyphrases;
+    // maps a character to its column in the transition table, column 0 is "any other character"
+    private final int[] alphabet;
+    private final int alphabetSize;
+    private final int[] transitions;
+    // longest keyphrase ending in each state, or -1
+    private final int[] output;
+    // next state along the failure chain which has an output, or -1
+    private final int[] outputLink;
+
+    public TriggerMatcher(Collection<String> triggers) {
+        this.keyphrases = triggers.toArray(new String[0]);
+
+        // the alphabet is every character used by a keyphrase
+        Map<java.lang.Character, Integer> columns = new HashMap<>();
+        int maxChar = 0;
+        for (String keyphrase : keyphrases) {
+            for (int i = 0; i < keyphrase.length(); i++) {
+                char c = keyphrase.charAt(i);
+                columns.putIfAbsent(c, columns.size() + 1);
+                maxChar = Math.max(maxChar, c);
+            }
+        }
+        this.alphabet = new int[maxChar + 1];
+        for (Map.Entry<java.lang.Character, Integer> column : columns.entrySet()) {
+            this.alphabet[column.getKey()] = column.getValue();
+        }
+        this.alphabetSize = columns.size() + 1;
+
+        // build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(newRow());
+        ends.add(-1);
+        for (int k = 0; k < keyphrases.length; k++) {
+            int state = ROOT;
+            for (int i = 0; i < keyphrases[k].length(); i++) {
+                int column = alphabet[keyphrases[k].charAt(i)];
+                if (trie.get(state)[column] <= 0) {
+                    trie.get(state)[column] = trie.size();
+                    trie.add(newRow());
+                    ends.add(-1);
+                }
+                state = trie.get(state)[column];
+            }
+            ends.set(state, k);
+        }
+
+        int states = trie.size();
+        this.transitions = new int[states * alphabetSize];
+        this.output = new int[states];
+        this.outputLink = new int[states];
+        int[] failure = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(trie.get(state), 0, transitions, state * alphabetSize, alphabetSize);
+            output[state] = ends.get(state);
+            outputLink[state] = -1;
+        }
+
+        // breadth first over the trie, turning it into a complete automaton
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int column = 0; column < alphabetSize; column++) {
+            int next = transitions[column];
+            if (next > 0) {
+                failure[next] = ROOT;
+                queue.add(next);
+            } else {
+                transitions[column] = ROOT;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = failure[state];
+            outputLink[state] = output[fail] >= 0 ? fail : outputLink[fail];
+            for (int column = 0; column < alphabetSize; column++) {
+                int next = transitions[state * alphabetSize + column];
+                int fallback = transitions[fail * alphabetSize + column];
+                if (next > 0) {
+                    failure[next] = fallback;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + column] = fallback;
+                }
+            }
+        }
+    }
+
+    private int[] newRow() {
+        return new int[alphabetSize];
+    }
+
+    // returns the trigger which should handle the command, or null if there is none
+    public String match(CharSequence command) {
+        long found = find(command);
+        return found < 0 ? null : keyphrase(matchedKeyphrase(found));
+    }
+
+    // finds the trigger which should handle the command, packed as start << 32 | keyphrase, or -1
+    public long find(CharSequence command) {
+        int bestStart = Integer.MAX_VALUE;
+        int best = -1;
+        int state = ROOT;
+        for (int i = 0; i < command.length(); i++) {
+            state = transitions[state * alphabetSize + column(command.charAt(i))];
+            // every keyphrase ending here, longest first
+            for (int s = output[state] >= 0 ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+                int k = output[s];
+                int start = i - keyphrases[k].length() + 1;
+                if (start > bestStart || (start == bestStart && keyphrases[k].length() <= keyphrases[best].length())) {
+                    continue;
+                }
+                if (isBoundary(command, start - 1) && isBoundary(command, i + 1)) {
+                    bestStart = start;
+                    best = k;
+                }
+            }
+        }
+        return best < 0 ? -1 : ((long) bestStart << 32) | best;
+    }
+
+    public static int matchStart(long found) {
+        return (int) (found >>> 32);
+    }
+
+    public static int matchedKeyphrase(long found) {
+        return (int) found;
+    }
+
+    public String keyphrase(int index) {
+        return keyphrases[index];
+    }
+
+    private int column(char c) {
+        return c < alphabet.length ? alphabet[c] : 0;
+    }
+
+    private static boolean isBoundary(CharSequence command, int index) {
+        return index < 0 || index >= command.length() || !CommandTokenizer.isWordChar(command.charAt(index));
+    }
+}
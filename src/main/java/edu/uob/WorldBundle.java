@@ -0,0 +1,457 @@
+package edu.uob;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The content of a game as loaded from an entities and an actions file: the locations with the
+ * entities they start with, the paths between them and the actions.
+ *
+ * <p>Parsing the source files is slow for large content packs, so a bundle can be compiled once
+ * into a compact binary file (every name and description written once to a string table) and
+ * loaded from that instead. The bundle remembers the size, modification time and checksum of the
+ * files it was compiled from, and is ignored once they change. Loading only reads a source file
+ * again for its checksum when its size is the same but its modification time isn't.
+ *
+ * <p>Compile a bundle with {@code WorldBundle <entities file> <actions file> <bundle file>}.
+ */
+public final class WorldBundle {
+
+    private static final int MAGIC = 0x53544742; // "STGB"
+    private static final int VERSION = 2;
+
+    private final List<LocationDefinition> locations = new ArrayList<>();
+    // from and to location names
+    private final List<String[]> paths = new ArrayList<>();
+    private final List<ActionDefinition> actions = new ArrayList<>();
+    // null for a source file which couldn't be read
+    private SourceStamp entitiesStamp;
+    private SourceStamp actionsStamp;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: WorldBundle <entities file> <actions file> <bundle file>");
+            return;
+        }
+        WorldBundle bundle = parse(new File(args[0]), new File(args[1]));
+        bundle.write(Path.of(args[2]));
+        System.out.println("Compiled " + bundle.locations.size() + " locations and " + bundle.actions.size() + " actions to " + args[2]);
+    }
+
+    public List<LocationDefinition> getLocations() {
+        return locations;
+    }
+
+    public List<String[]> getPaths() {
+        return paths;
+    }
+
+    public List<ActionDefinition> getActions() {
+        return actions;
+    }
+
+    /**
+     * Loads the bundle file if it was compiled from the given source files as they are now,
+     * otherwise parses the source files.
+     *
+     * @param entitiesFile The entities file.
+     * @param actionsFile The actions file.
+     * @param bundleFile The compiled bundle, which doesn't have to exist.
+     * @return The content of the game.
+     * @throws IOException If the bundle exists but can't be read.
+     */
+    public static WorldBundle load(File entitiesFile, File actionsFile, File bundleFile) throws IOException {
+        if (bundleFile.exists()) {
+            WorldBundle bundle = read(bundleFile.toPath());
+            if (SourceStamp.matches(bundle.entitiesStamp, entitiesFile) && SourceStamp.matches(bundle.actionsStamp, actionsFile)) {
+                return bundle;
+            }
+        }
+        return parse(entitiesFile, actionsFile);
+    }
+
+    /**
+     * Parses an entities and an actions file.
+     *
+     * @param entitiesFile The entities file.
+     * @param actionsFile The actions file.
+     * @return The content of the game.
+     */
+    public static WorldBundle parse(File entitiesFile, File actionsFile) {
+        WorldBundle bundle = new WorldBundle();
+        // taken before reading, so a file changed while it is parsed makes the bundle stale
+        bundle.entitiesStamp = SourceStamp.of(entitiesFile);
+        bundle.actionsStamp = SourceStamp.of(actionsFile);
+        bundle.readEntities(entitiesFile);
+        bundle.readActions(actionsFile);
+        return bundle;
+    }
+
+    /**
+     * Parses just an actions file, for worlds whose locations come from somewhere else.
+     *
+     * @param actionsFile The actions file.
+     * @return The actions of the game, without any locations.
+     */
+    public static WorldBundle parseActions(File actionsFile) {
+        WorldBundle bundle = new WorldBundle();
+        bundle.readActions(actionsFile);
+        return bundle;
+    }
+
+    private void readEntities(File entitiesFile) {
+        try {
+            new EntitiesFileReader(entitiesFile).read(this);
+        } catch (IOException e) {
+            System.out.println("Failed to read entities file " + entitiesFile + ": " + e.getMessage());
+        }
+    }
+
+    private void readActions(File actionsFile) {
+        ActionsFileReader reader = new ActionsFileReader(actionsFile);
+        try {
+            actions.addAll(reader.read());
+        } catch (IOException e) {
+            System.out.println("Failed to read actions file " + actionsFile + ": " + e.getMessage());
+        }
+        reader.getProblems().forEach(System.out::println);
+    }
+
+    /**
+     * Compiles the bundle to a file, reading the source files it was parsed from once more for
+     * their checksums.
+     *
+     * @param file The bundle file to (over)write.
+     * @throws IOException If the bundle can't be written, or a source file is missing or has
+     *     changed since it was parsed.
+     */
+    public void write(Path file) throws IOException {
+        if (entitiesStamp == null || actionsStamp == null) {
+            throw new IOException("A world bundle can only be compiled from source files which exist: " + file);
+        }
+        entitiesStamp.checksum();
+        actionsStamp.checksum();
+
+        // every name and description is written once, everything else refers to it by index
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (LocationDefinition location : locations) {
+            intern(location.name, indexes, strings);
+            intern(location.description, indexes, strings);
+            for (List<EntityDefinition> entities : List.of(location.characters, location.artefacts, location.furniture)) {
+                for (EntityDefinition entity : entities) {
+                    intern(entity.name, indexes, strings);
+                    intern(entity.description, indexes, strings);
+                }
+            }
+        }
+        for (String[] path : paths) {
+            intern(path[0], indexes, strings);
+            intern(path[1], indexes, strings);
+        }
+        for (ActionDefinition action : actions) {
+            action.triggers.forEach(name -> intern(name, indexes, strings));
+            action.subjects.forEach(name -> intern(name, indexes, strings));
+            action.consumed.forEach(name -> intern(name, indexes, strings));
+            action.produced.forEach(name -> intern(name, indexes, strings));
+            intern(action.narration, indexes, strings);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            entitiesStamp.write(out);
+            actionsStamp.write(out);
+
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                // a missing description is written as -1
+                if (string == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(locations.size());
+            for (LocationDefinition location : locations) {
+                out.writeInt(indexes.get(location.name));
+                out.writeInt(indexes.get(location.description));
+                writeEntities(out, location.characters, indexes);
+                writeEntities(out, location.artefacts, indexes);
+                writeEntities(out, location.furniture, indexes);
+            }
+
+            out.writeInt(paths.size());
+            for (String[] path : paths) {
+                out.writeInt(indexes.get(path[0]));
+                out.writeInt(indexes.get(path[1]));
+            }
+
+            out.writeInt(actions.size());
+            for (ActionDefinition action : actions) {
+                writeNames(out, action.triggers, indexes);
+                writeNames(out, action.subjects, indexes);
+                writeNames(out, action.consumed, indexes);
+                writeNames(out, action.produced, indexes);
+                out.writeInt(indexes.get(action.narration));
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static WorldBundle read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a world bundle: " + file);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported world bundle version " + version + ": " + file);
+            }
+            WorldBundle bundle = new WorldBundle();
+            bundle.entitiesStamp = new SourceStamp(null, in.getLong(), in.getLong(), in.getLong());
+            bundle.actionsStamp = new SourceStamp(null, in.getLong(), in.getLong(), in.getLong());
+
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.getInt();
+                if (length < 0) {
+                    continue;
+                }
+                ByteBuffer bytes = in.slice();
+                bytes.limit(length);
+                strings[i] = StandardCharsets.UTF_8.decode(bytes).toString();
+                in.position(in.position() + length);
+            }
+
+            int locationCount = in.getInt();
+            for (int i = 0; i < locationCount; i++) {
+                LocationDefinition location = new LocationDefinition(strings[in.getInt()], strings[in.getInt()]);
+                readEntities(in, strings, location.characters);
+                readEntities(in, strings, location.artefacts);
+                readEntities(in, strings, location.furniture);
+                bundle.locations.add(location);
+            }
+
+            int pathCount = in.getInt();
+            for (int i = 0; i < pathCount; i++) {
+                bundle.paths.add(new String[] {strings[in.getInt()], strings[in.getInt()]});
+            }
+
+            int actionCount = in.getInt();
+            for (int i = 0; i < actionCount; i++) {
+                ActionDefinition action = new ActionDefinition();
+                readNames(in, strings, action.triggers);
+                readNames(in, strings, action.subjects);
+                readNames(in, strings, action.consumed);
+                readNames(in, strings, action.produced);
+                action.narration = strings[in.getInt()];
+                bundle.actions.add(action);
+            }
+            return bundle;
+        } catch (RuntimeException e) {
+            // a truncated or corrupt file
+            throw new IOException("Corrupt world bundle: " + file, e);
+        }
+    }
+
+    private static void intern(String string, Map<String, Integer> indexes, List<String> strings) {
+        if (!indexes.containsKey(string)) {
+            indexes.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void writeEntities(DataOutputStream out, List<EntityDefinition> entities, Map<String, Integer> indexes) throws IOException {
+        out.writeInt(entities.size());
+        for (EntityDefinition entity : entities) {
+            out.writeInt(indexes.get(entity.name));
+            out.writeInt(indexes.get(entity.description));
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> list, Map<String, Integer> indexes) throws IOException {
+        out.writeInt(list.size());
+        for (String name : list) {
+            out.writeInt(indexes.get(name));
+        }
+    }
+
+    private static void readEntities(ByteBuffer in, String[] strings, List<EntityDefinition> entities) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            entities.add(new EntityDefinition(strings[in.getInt()], strings[in.getInt()]));
+        }
+    }
+
+    private static void readNames(ByteBuffer in, String[] strings, List<String> list) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            list.add(strings[in.getInt()]);
+        }
+    }
+
+    // what a bundle remembers of a source file, to tell whether it is still up to date
+    private static final class SourceStamp {
+        // only known for a bundle just parsed, which still has to work out the checksum
+        private final File file;
+        private final long size;
+        private final long modified;
+        private long checksum;
+
+        private SourceStamp(File file, long size, long modified, long checksum) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        // the size and modification time of a file, or null if it can't be read
+        private static SourceStamp of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new SourceStamp(file, attributes.size(), attributes.lastModifiedTime().toMillis(), 0);
+            } catch (IOException e) {
+                // a missing file, its reader reports it
+                return null;
+            }
+        }
+
+        // the whole file is only read when only its modification time changed, e.g. by a copy
+        private static boolean matches(SourceStamp stamp, File file) throws IOException {
+            SourceStamp current = of(file);
+            if (stamp == null || current == null || current.size != stamp.size) {
+                return false;
+            }
+            return current.modified == stamp.modified || checksum(file) == stamp.checksum;
+        }
+
+        // works out the checksum of the file as it was parsed
+        private void checksum() throws IOException {
+            checksum = checksum(file);
+            SourceStamp current = of(file);
+            if (current == null || current.size != size || current.modified != modified) {
+                throw new IOException("Source file changed while the world bundle was compiled: " + file);
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(checksum);
+        }
+
+        private static long checksum(File file) throws IOException {
+            CRC32 checksum = new CRC32();
+            checksum.update(Files.readAllBytes(file.toPath()));
+            return checksum.getValue();
+        }
+    }
+
+    public static final class LocationDefinition {
+        private final String name;
+        private final String description;
+        private final List<EntityDefinition> characters = new ArrayList<>();
+        private final List<EntityDefinition> artefacts = new ArrayList<>();
+        private final List<EntityDefinition> furniture = new ArrayList<>();
+
+        public LocationDefinition(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<EntityDefinition> getCharacters() {
+            return characters;
+        }
+
+        public List<EntityDefinition> getArtefacts() {
+            return artefacts;
+        }
+
+        public List<EntityDefinition> getFurniture() {
+            return furniture;
+        }
+    }
+
+    public static final class EntityDefinition {
+        private final String name;
+        private final String description;
+
+        public EntityDefinition(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static final class ActionDefinition {
+        // normalized keyphrases, see CommandTokenizer.normalize
+        private final List<String> triggers = new ArrayList<>();
+        private final List<String> subjects = new ArrayList<>();
+        private final List<String> consumed = new ArrayList<>();
+        private final List<String> produced = new ArrayList<>();
+        private String narration;
+
+        public List<String> getTriggers() {
+            return triggers;
+        }
+
+        public List<String> getSubjects() {
+            return subjects;
+        }
+
+        public List<String> getConsumed() {
+            return consumed;
+        }
+
+        public List<String> getProduced() {
+            return produced;
+        }
+
+        public String getNarration() {
+            return narration;
+        }
+
+        void setNarration(String narration) {
+            this.narration = narration;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package edu.uob;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+
+/**
+ * Hosts many independent worlds played from the same content in one server.
+ *
+ * <p>The content is parsed once and shared by every world, see {@link GameContent}. Each world is
+ * a {@link GameServer} of its own, with its own players, locks and entity placements, started the
+ * first time a command is sent to it. Command lines name their world in front of the player:
+ * {@code world/player: command}, lines without a world go to the {@value #DEFAULT_WORLD} world.
+ *
+ * <p>Clients pick the world ids, so worlds nobody has sent a command to for the idle timeout are
+ * stopped again, their games are lost. Without that, a host would fill up for good.
+ */
+public final class WorldHost implements CommandHandler {
+
+    public static final String DEFAULT_WORLD = "default";
+    private static final String WORLDS_FULL = "[Error]: No more worlds can be started, please try again later\n";
+    private static final long STOPPED = Long.MIN_VALUE;
+
+    private final GameContent content;
+    // every world records to the same metrics
+    private final ServerMetrics metrics;
+    private final int maxWorlds;
+    // in nanoseconds, 0 to keep every world until it is removed
+    private final long idleTimeout;
+    private final Map<String, HostedWorld> worlds = new ConcurrentHashMap<>();
+
+    private static final class HostedWorld {
+        private final GameServer server;
+        // System.nanoTime() of the last command, STOPPED once the world is being removed
+        private final AtomicLong lastUsed = new AtomicLong(System.nanoTime());
+
+        private HostedWorld(GameServer server) {
+            this.server = server;
+        }
+
+        // false if the world is being removed
+        private boolean touch() {
+            long used = lastUsed.get();
+            while (used != STOPPED) {
+                if (lastUsed.compareAndSet(used, System.nanoTime())) {
+                    return true;
+                }
+                used = lastUsed.get();
+            }
+            return false;
+        }
+    }
+
+    // the save of a batch spread over several worlds, done once every world and the routing are
+    private static final class BatchSaved implements Saved {
+        private final Saved saved;
+        // one for the routing, plus one for every run still being saved
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean failed;
+
+        private BatchSaved(Saved saved) {
+            this.saved = saved;
+        }
+
+        private Saved run() {
+            pending.incrementAndGet();
+            return this;
+        }
+
+        @Override
+        public void done(boolean saved) {
+            if (!saved) {
+                failed = true;
+            }
+            if (pending.decrementAndGet() == 0) {
+                this.saved.done(!failed);
+            }
+        }
+    }
+
+    /**
+     * @param content The content every world is played from.
+     * @param maxWorlds How many worlds may be started at once.
+     */
+    public WorldHost(GameContent content, int maxWorlds) {
+        this(content, maxWorlds, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param content The content every world is played from.
+     * @param maxWorlds How many worlds may be started at once.
+     * @param idleTimeout How long a world may go without commands before it is stopped, 0 to
+     *     never stop worlds.
+     * @param unit The unit of the idle timeout.
+     */
+    public WorldHost(GameContent content, int maxWorlds, long idleTimeout, TimeUnit unit) {
+        this.content = content;
+        this.maxWorlds = maxWorlds;
+        this.idleTimeout = unit.toNanos(idleTimeout);
+        this.metrics = new ServerMetrics(content);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        // e.g. -Dstag.bundle=world.bundle to start from a compiled world bundle
+        String bundleFile = System.getProperty("stag.bundle");
+        WorldBundle bundle = bundleFile == null ? WorldBundle.parse(entitiesFile, actionsFile) : WorldBundle.load(entitiesFile, actionsFile, new File(bundleFile));
+        // e.g. -Dstag.worlds.idle=600 to stop worlds nobody played for ten minutes
+        long idleSeconds = Long.getLong("stag.worlds.idle", 0);
+        WorldHost host = new WorldHost(new GameContent(bundle), Integer.getInteger("stag.worlds.max", 1000), idleSeconds, TimeUnit.SECONDS);
+        host.scheduleIdleEviction();
+        try {
+            host.getMetrics().register("host");
+        } catch (JMException e) {
+            System.out.println("Failed to register the metrics: " + e.getMessage());
+        }
+        // e.g. -Dstag.metrics.interval=60 to print the metrics every minute
+        Long metricsInterval = Long.getLong("stag.metrics.interval");
+        if (metricsInterval != null) {
+            host.getMetrics().scheduleDump(metricsInterval);
+        }
+        if (args.length > 0 && args[0].equals("nio")) {
+            new NonBlockingServer(host).listenOn(8888);
+        } else {
+            new SessionServer(host).listenOn(8888);
+        }
+    }
+
+    /**
+     * Routes a command line to the world it names.
+     *
+     * @param command The command line, {@code world/player: command} or {@code player: command}.
+     * @return The response of the world.
+     */
+    @Override
+    public String handleCommand(String command) {
+        int colon = command.indexOf(':');
+        int slash = command.indexOf('/');
+        if (slash < 0 || (colon >= 0 && slash > colon)) {
+            return handleCommand(DEFAULT_WORLD, command);
+        }
+        return handleCommand(command.substring(0, slash).trim(), command.substring(slash + 1));
+    }
+
+    // the same routing, with the response rendered into the sink
+    @Override
+    public void handleCommand(String command, ResponseSink sink) {
+        int colon = command.indexOf(':');
+        int slash = command.indexOf('/');
+        if (slash < 0 || (colon >= 0 && slash > colon)) {
+            handleCommand(DEFAULT_WORLD, command, sink);
+        } else {
+            handleCommand(command.substring(0, slash).trim(), command.substring(slash + 1), sink);
+        }
+    }
+
+    // the same routing, without waiting for the world to save the changes
+    @Override
+    public void handleCommand(String command, ResponseSink sink, Saved saved) {
+        int colon = command.indexOf(':');
+        int slash = command.indexOf('/');
+        if (slash < 0 || (colon >= 0 && slash > colon)) {
+            handleCommand(DEFAULT_WORLD, command, sink, saved);
+        } else {
+            handleCommand(command.substring(0, slash).trim(), command.substring(slash + 1), sink, saved);
+        }
+    }
+
+    public String handleCommand(String worldId, String command) {
+        GameServer world = getWorld(worldId);
+        if (world == null) {
+            return WORLDS_FULL;
+        }
+        return world.handleCommand(command);
+    }
+
+    private void handleCommand(String worldId, String command, ResponseSink sink) {
+        GameServer world = getWorld(worldId);
+        if (world == null) {
+            sink.append(WORLDS_FULL);
+        } else {
+            world.handleCommand(command, sink);
+        }
+    }
+
+    private void handleCommand(String worldId, String command, ResponseSink sink, Saved saved) {
+        GameServer world = getWorld(worldId);
+        if (world == null) {
+            sink.append(WORLDS_FULL);
+            saved.done(true);
+        } else {
+            world.handleCommand(command, sink, saved);
+        }
+    }
+
+    /**
+     * Routes a command received over the binary protocol to the world named in front of the
+     * player the connection logged in as.
+     *
+     * @param userName The player, {@code world/player} or {@code player}.
+     * @param command The UTF-8 bytes of the command.
+     * @param sink Where the response of the world goes.
+     */
+    @Override
+    public void handleCommand(String userName, ByteBuffer command, ResponseSink sink) {
+        int slash = userName.indexOf('/');
+        GameServer world = getWorld(slash < 0 ? DEFAULT_WORLD : userName.substring(0, slash).trim());
+        if (world == null) {
+            sink.append(WORLDS_FULL);
+        } else {
+            world.handleCommand(userName.substring(slash + 1), command, sink);
+        }
+    }
+
+    // the same routing, without waiting for the world to save the changes
+    @Override
+    public void handleCommand(String userName, ByteBuffer command, ResponseSink sink, Saved saved) {
+        int slash = userName.indexOf('/');
+        GameServer world = getWorld(slash < 0 ? DEFAULT_WORLD : userName.substring(0, slash).trim());
+        if (world == null) {
+            sink.append(WORLDS_FULL);
+            saved.done(true);
+        } else {
+            world.handleCommand(userName.substring(slash + 1), command, sink, saved);
+        }
+    }
+
+    @Override
+    public void subscribe(String userName, LocationFeed.Subscriber subscriber) {
+        int slash = userName.indexOf('/');
+        GameServer world = getWorld(slash < 0 ? DEFAULT_WORLD : userName.substring(0, slash).trim());
+        if (world != null) {
+            world.subscribe(userName.substring(slash + 1), subscriber);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String userName, LocationFeed.Subscriber subscriber) {
+        int slash = userName.indexOf('/');
+        HostedWorld world = worlds.get(slash < 0 ? DEFAULT_WORLD : userName.substring(0, slash).trim());
+        if (world != null) {
+            world.server.unsubscribe(userName.substring(slash + 1), subscriber);
+        }
+    }
+
+    /**
+     * Routes the commands of a batch to their worlds, handing every run of commands for the same
+     * world to it as one batch.
+     *
+     * @param commands The command lines of the batch.
+     * @return The response to each command, in the same order.
+     */
+    @Override
+    public List<String> handleBatch(List<String> commands) {
+        return handleBatch(commands, (BatchSaved) null);
+    }
+
+    // the same without waiting for the worlds to save the changes, saved is called once all of them have
+    @Override
+    public List<String> handleBatch(List<String> commands, Saved saved) {
+        BatchSaved batchSaved = new BatchSaved(saved);
+        List<String> responses = handleBatch(commands, batchSaved);
+        // every run has been handed to its world
+        batchSaved.done(true);
+        return responses;
+    }
+
+    // waits for the worlds to save the changes unless saved is given
+    private List<String> handleBatch(List<String> commands, BatchSaved saved) {
+        List<String> responses = new ArrayList<>(commands.size());
+        List<String> run = new ArrayList<>();
+        String runWorld = null;
+        for (String command : commands) {
+            int colon = command.indexOf(':');
+            int slash = command.indexOf('/');
+            String worldId = DEFAULT_WORLD;
+            if (slash >= 0 && (colon < 0 || slash < colon)) {
+                worldId = command.substring(0, slash).trim();
+                command = command.substring(slash + 1);
+            }
+            if (!worldId.equals(runWorld)) {
+                handleRun(runWorld, run, responses, saved);
+                runWorld = worldId;
+            }
+            run.add(command);
+        }
+        handleRun(runWorld, run, responses, saved);
+        return responses;
+    }
+
+    // hands a run of commands to their world, then empties it
+    private void handleRun(String worldId, List<String> run, List<String> responses, BatchSaved saved) {
+        if (run.isEmpty()) {
+            return;
+        }
+        GameServer world = getWorld(worldId);
+        if (world == null) {
+            for (int i = 0; i < run.size(); i++) {
+                responses.add(WORLDS_FULL);
+            }
+        } else if (saved == null) {
+            responses.addAll(world.handleBatch(run));
+        } else {
+            responses.addAll(world.handleBatch(run, saved.run()));
+        }
+        run.clear();
+    }
+
+    /**
+     * Looks a world up, starting it if it isn't running yet.
+     *
+     * @param worldId The id of the world.
+     * @return The world, or null if it isn't running and the host is full.
+     */
+    public GameServer getWorld(String worldId) {
+        while (true) {
+            HostedWorld world = worlds.get(worldId);
+            if (world == null) {
+                synchronized (worlds) {
+                    if (worlds.size() >= maxWorlds && !worlds.containsKey(worldId)) {
+                        evictIdleWorlds();
+                    }
+                    if (worlds.size() >= maxWorlds && !worlds.containsKey(worldId)) {
+                        return null;
+                    }
+                    world = worlds.computeIfAbsent(worldId, id -> new HostedWorld(new GameServer(content, metrics)));
+                }
+            }
+            // a world stopped while we looked it up is started again
+            if (world.touch()) {
+                return world.server;
+            }
+            worlds.remove(worldId, world);
+        }
+    }
+
+    // stops a world, its game is lost
+    public GameServer removeWorld(String worldId) {
+        HostedWorld world = worlds.get(worldId);
+        if (world == null) {
+            return null;
+        }
+        world.lastUsed.set(STOPPED);
+        stop(worldId, world);
+        return world.server;
+    }
+
+    /**
+     * Stops every world nobody has sent a command to for the idle timeout.
+     *
+     * @return How many worlds were stopped.
+     */
+    public int evictIdleWorlds() {
+        if (idleTimeout <= 0) {
+            return 0;
+        }
+        int stopped = 0;
+        long now = System.nanoTime();
+        for (Map.Entry<String, HostedWorld> entry : worlds.entrySet()) {
+            HostedWorld world = entry.getValue();
+            long used = world.lastUsed.get();
+            // a command touching the world at the same time keeps it
+            if (used != STOPPED && now - used > idleTimeout && world.lastUsed.compareAndSet(used, STOPPED)) {
+                stop(entry.getKey(), world);
+                stopped++;
+            }
+        }
+        return stopped;
+    }
+
+    // checks for idle worlds every half of the idle timeout, if there is one
+    public void scheduleIdleEviction() {
+        if (idleTimeout <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "world-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeout) / 2);
+        scheduler.scheduleAtFixedRate(this::evictIdleWorlds, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop(String worldId, HostedWorld world) {
+        if (worlds.remove(worldId, world)) {
+            metrics.playersJoined(-world.server.getPlayerCount());
+            world.server.stopFeed();
+        }
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Set<String> getWorldIds() {
+        return Collections.unmodifiableSet(worlds.keySet());
+    }
+}
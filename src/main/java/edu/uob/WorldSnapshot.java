@@ -0,0 +1,247 @@
+package edu.uob;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the mutable state of a game: where every entity is, the paths between locations,
+ * which locations are unlocked and every player's location, health and inventory.
+ *
+ * <p>Only names are stored, entity descriptions come from the config the snapshot is restored on
+ * top of. On disk every name is written once to a string table and referred to by index
+ * everywhere else, the file is written to a temporary file and moved into place so a crash never
+ * leaves a half written snapshot behind, and it is read back through a memory map. The snapshot
+ * also records the last {@link CommandJournal} record it reflects, so replay can start after it.
+ */
+public final class WorldSnapshot {
+
+    private static final int MAGIC = 0x53544147; // "STAG"
+    private static final int VERSION = 1;
+
+    private final List<LocationState> locations = new ArrayList<>();
+    private final List<PlayerState> players = new ArrayList<>();
+    private final List<String> unlocked = new ArrayList<>();
+    // the last journal record the snapshot reflects
+    private long journalSequence;
+
+    public List<LocationState> getLocations() {
+        return locations;
+    }
+
+    public List<PlayerState> getPlayers() {
+        return players;
+    }
+
+    public List<String> getUnlocked() {
+        return unlocked;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public void setJournalSequence(long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
+
+    public void write(Path file) throws IOException {
+        // every name is written once, everything else refers to it by index
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (LocationState location : locations) {
+            intern(location.name, indexes, names);
+            location.artefacts.forEach(name -> intern(name, indexes, names));
+            location.furniture.forEach(name -> intern(name, indexes, names));
+            location.characters.forEach(name -> intern(name, indexes, names));
+            location.paths.forEach(name -> intern(name, indexes, names));
+        }
+        unlocked.forEach(name -> intern(name, indexes, names));
+        for (PlayerState player : players) {
+            intern(player.name, indexes, names);
+            intern(player.location, indexes, names);
+            player.inventory.forEach(name -> intern(name, indexes, names));
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+
+            out.writeInt(names.size());
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(locations.size());
+            for (LocationState location : locations) {
+                out.writeInt(indexes.get(location.name));
+                writeNames(out, location.artefacts, indexes);
+                writeNames(out, location.furniture, indexes);
+                writeNames(out, location.characters, indexes);
+                writeNames(out, location.paths, indexes);
+            }
+            writeNames(out, unlocked, indexes);
+
+            out.writeInt(players.size());
+            for (PlayerState player : players) {
+                out.writeInt(indexes.get(player.name));
+                out.writeInt(indexes.get(player.location));
+                out.writeInt(player.health);
+                writeNames(out, player.inventory, indexes);
+            }
+        }
+        // make sure the data is on disk before the snapshot replaces the previous one
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static WorldSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long journalSequence = in.getLong();
+
+            String[] names = new String[in.getInt()];
+            for (int i = 0; i < names.length; i++) {
+                int length = in.getInt();
+                ByteBuffer bytes = in.slice();
+                bytes.limit(length);
+                names[i] = StandardCharsets.UTF_8.decode(bytes).toString();
+                in.position(in.position() + length);
+            }
+
+            WorldSnapshot snapshot = new WorldSnapshot();
+            snapshot.journalSequence = journalSequence;
+            int locationCount = in.getInt();
+            for (int i = 0; i < locationCount; i++) {
+                LocationState location = new LocationState(names[in.getInt()]);
+                readNames(in, names, location.artefacts);
+                readNames(in, names, location.furniture);
+                readNames(in, names, location.characters);
+                readNames(in, names, location.paths);
+                snapshot.locations.add(location);
+            }
+            readNames(in, names, snapshot.unlocked);
+
+            int playerCount = in.getInt();
+            for (int i = 0; i < playerCount; i++) {
+                PlayerState player = new PlayerState(names[in.getInt()], names[in.getInt()], in.getInt());
+                readNames(in, names, player.inventory);
+                snapshot.players.add(player);
+            }
+            return snapshot;
+        } catch (RuntimeException e) {
+            // a truncated or corrupt file
+            throw new IOException("Corrupt snapshot file: " + file, e);
+        }
+    }
+
+    private static void intern(String name, Map<String, Integer> indexes, List<String> names) {
+        if (!indexes.containsKey(name)) {
+            indexes.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> list, Map<String, Integer> indexes) throws IOException {
+        out.writeInt(list.size());
+        for (String name : list) {
+            out.writeInt(indexes.get(name));
+        }
+    }
+
+    private static void readNames(ByteBuffer in, String[] names, List<String> list) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            list.add(names[in.getInt()]);
+        }
+    }
+
+    public static final class LocationState {
+        private final String name;
+        private final List<String> artefacts = new ArrayList<>();
+        private final List<String> furniture = new ArrayList<>();
+        // characters which aren't players, players are stored separately
+        private final List<String> characters = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+
+        public LocationState(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getArtefacts() {
+            return artefacts;
+        }
+
+        public List<String> getFurniture() {
+            return furniture;
+        }
+
+        public List<String> getCharacters() {
+            return characters;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+    }
+
+    public static final class PlayerState {
+        private final String name;
+        private final String location;
+        private final int health;
+        private final List<String> inventory = new ArrayList<>();
+
+        public PlayerState(String name, String location, int health) {
+            this.name = name;
+            this.location = location;
+            this.health = health;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public int getHealth() {
+            return health;
+        }
+
+        public List<String> getInventory() {
+            return inventory;
+        }
+    }
+}
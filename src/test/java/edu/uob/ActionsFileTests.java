@@ -4,6 +4,9 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.io.IOException;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
@@ -11,9 +14,11 @@ import org.xml.sax.SAXException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 final class ActionsFileTests {
 
@@ -40,4 +45,47 @@ final class ActionsFileTests {
       }
   }
 
+  // The streaming reader should read the extended actions file the same way as the DOM
+  @Test
+  void testExtendedActionsFileIsStreamed() throws IOException {
+      ActionsFileReader reader = new ActionsFileReader(new File("config" + File.separator + "extended-actions.xml"));
+      List<WorldBundle.ActionDefinition> actions = reader.read();
+      assertTrue(reader.getProblems().isEmpty(), "The extended actions file has no problems: " + reader.getProblems());
+      assertEquals(8, actions.size(), "The extended actions file has 8 actions");
+      WorldBundle.ActionDefinition chop = actions.get(1);
+      assertEquals(List.of("chop", "cut", "cut down"), chop.getTriggers());
+      assertEquals(List.of("tree", "axe"), chop.getSubjects());
+      assertEquals(List.of("tree"), chop.getConsumed());
+      assertEquals(List.of("log"), chop.getProduced());
+      assertEquals("You cut down the tree with the axe", chop.getNarration());
+  }
+
+  // A malformed action should be skipped and reported with its line number
+  @Test
+  void testMalformedActionIsReported(@TempDir Path directory) throws IOException {
+      Path file = directory.resolve("actions.xml");
+      Files.writeString(file, String.join("\n",
+              "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+              "<actions>",
+              "    <action>",
+              "        <triggers><keyphrase>open</keyphrase></triggers>",
+              "        <subjects><entity>trapdoor</entity></subjects>",
+              "        <consumed></consumed>",
+              "        <narration>Nothing happens</narration>",
+              "    </action>",
+              "    <action>",
+              "        <triggers><keyphrase>drink</keyphrase></triggers>",
+              "        <subjects><entity>potion</entity></subjects>",
+              "        <consumed><entity>potion</entity></consumed>",
+              "        <produced><entity>health</entity></produced>",
+              "        <narration>You drink the potion</narration>",
+              "    </action>",
+              "</actions>"));
+      ActionsFileReader reader = new ActionsFileReader(file.toFile());
+      List<WorldBundle.ActionDefinition> actions = reader.read();
+      assertEquals(1, actions.size(), "Only the well formed action should have been read");
+      assertEquals(List.of("drink"), actions.get(0).getTriggers());
+      assertEquals(1, reader.getProblems().size());
+      assertTrue(reader.getProblems().get(0).endsWith(":3: action has no <produced>, skipping the action"), reader.getProblems().get(0));
+  }
 }
@@ -0,0 +1,54 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class BatchTests {
+
+  private static final File ENTITIES_FILE = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+  private static final File ACTIONS_FILE = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+
+  // Test that a batch gets the same responses as sending its commands one at a time
+  @Test
+  void testBatchMatchesSingleCommands() {
+      List<String> commands = List.of("simon: get axe", "sion: look", "simon: goto forest", "simon: cut down tree",
+              "simon: look", "sion: goto forest", "sion: get log", "simon: inv", "simon: dance");
+      GameServer single = new GameServer(ENTITIES_FILE, ACTIONS_FILE);
+      List<String> expected = new ArrayList<>();
+      for (String command : commands) {
+          expected.add(single.handleCommand(command));
+      }
+      GameServer batched = new GameServer(ENTITIES_FILE, ACTIONS_FILE);
+      assertEquals(expected, batched.handleBatch(commands), "The batch was handled differently");
+      long recorded = batched.getMetrics().getCommandCounts().values().stream().mapToLong(Long::longValue).sum();
+      assertEquals(commands.size(), recorded, "Not every command of the batch was recorded");
+  }
+
+  // Test that the host hands every command of a batch to its own world
+  @Test
+  void testBatchAcrossWorlds() {
+      WorldHost host = new WorldHost(GameContent.parse(ENTITIES_FILE, ACTIONS_FILE), 10);
+      List<String> responses = host.handleBatch(List.of("north/simon: get axe", "north/simon: inv",
+              "south/simon: inv", "north/simon: look"));
+      assertEquals(4, responses.size(), "Did not get a response for every command");
+      assertTrue(responses.get(1).contains("axe"), "The axe is not in the inventory");
+      assertTrue(!responses.get(2).contains("axe"), "The axe was taken in the wrong world");
+      assertTrue(!responses.get(3).contains("axe"), "The axe is still in the cabin");
+  }
+
+  // Test that batch headers are recognised and bounded
+  @Test
+  void testBatchSize() {
+      assertEquals(-1, CommandHandler.batchSize("simon: look"));
+      assertEquals(3, CommandHandler.batchSize("BATCH 3"));
+      assertEquals(0, CommandHandler.batchSize("BATCH 0"));
+      assertEquals(0, CommandHandler.batchSize("BATCH lots"));
+      assertEquals(0, CommandHandler.batchSize("BATCH " + (CommandHandler.MAX_BATCH + 1)));
+  }
+}
@@ -0,0 +1,54 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+final class BinaryProtocolTests {
+
+  // Test that frames hold the same bytes the standard encoder produces
+  @Test
+  void testFrameEncoding() {
+      String text = "You see a café — and a 🔑\n";
+      ByteBuffer frame = BinaryProtocol.frame(BinaryProtocol.RESPONSE, text);
+      byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+      assertEquals(BinaryProtocol.HEADER_LENGTH + expected.length, frame.remaining());
+      assertEquals(1 + expected.length, frame.getInt());
+      assertEquals(BinaryProtocol.RESPONSE, frame.get());
+      byte[] payload = new byte[frame.remaining()];
+      frame.get(payload);
+      assertArrayEquals(expected, payload, "The payload is not UTF-8");
+  }
+
+  // Test that commands tokenized from bytes match commands tokenized from text
+  @Test
+  void testTokenizeBytes() {
+      CommandTokenizer tokenizer = new CommandTokenizer(List.of("axe", "café", "cut", "tree"));
+      for (String command : List.of("get the AXE", "  cut   down, tree!", "goto café", "look 🔑 key", "")) {
+          CommandTokens fromText = new CommandTokens();
+          tokenizer.tokenize("Simon: " + command, fromText);
+          CommandTokens fromBytes = new CommandTokens();
+          tokenizer.tokenize("Simon", ByteBuffer.wrap(command.getBytes(StandardCharsets.UTF_8)), fromBytes);
+          assertEquals(fromText.getUserName(), fromBytes.getUserName());
+          assertEquals(fromText.toString(), fromBytes.toString(), "Different text for " + command);
+          assertEquals(fromText.size(), fromBytes.size(), "Different tokens for " + command);
+          for (int i = 0; i < fromText.size(); i++) {
+              assertEquals(fromText.word(i), fromBytes.word(i));
+          }
+      }
+  }
+
+  // Test that malformed bytes only separate words
+  @Test
+  void testMalformedBytes() {
+      CommandTokenizer tokenizer = new CommandTokenizer(List.of("axe"));
+      CommandTokens tokens = new CommandTokens();
+      tokenizer.tokenize("simon", ByteBuffer.wrap(new byte[] {'g', 'e', 't', (byte) 0xC3, 'a', 'x', 'e', (byte) 0xFF}), tokens);
+      assertEquals("get axe", tokens.toString());
+      assertEquals("axe", tokens.word(1));
+  }
+}
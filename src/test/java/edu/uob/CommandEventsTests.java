@@ -0,0 +1,58 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class CommandEventsTests {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testPhasesAreRecorded() throws IOException {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      Path file = directory.resolve("commands.jfr");
+      try (Recording recording = new Recording()) {
+          for (String event : new String[] {"Parse", "PlayerLookup", "TriggerMatch", "Preconditions", "Mutation", "Render"}) {
+              recording.enable("edu.uob." + event);
+          }
+          recording.start();
+          server.handleCommand("simon: get axe");
+          server.handleCommand("simon: goto forest");
+          server.handleCommand("simon: chop tree with axe");
+          server.handleCommand("simon: look");
+          recording.stop();
+          recording.dump(file);
+      }
+
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      Map<String, Integer> counts = new HashMap<>();
+      for (RecordedEvent event : events) {
+          counts.merge(event.getEventType().getName(), 1, Integer::sum);
+          assertEquals("simon", event.getString("player"));
+      }
+      assertEquals(4, counts.get("edu.uob.Parse"));
+      assertEquals(4, counts.get("edu.uob.PlayerLookup"));
+      assertEquals(1, counts.get("edu.uob.TriggerMatch"));
+      assertEquals(1, counts.get("edu.uob.Mutation"));
+      assertEquals(1, counts.get("edu.uob.Render"));
+      assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("edu.uob.Preconditions")
+              && "chop".equals(event.getString("trigger")) && "forest".equals(event.getString("location"))));
+  }
+}
@@ -0,0 +1,60 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class CommandTokenizerTests {
+
+  private final CommandTokenizer tokenizer = new CommandTokenizer(List.of("axe", "trap-door", "old_key", "cut", "down", "tree"));
+
+  private CommandTokens tokenize(String command) {
+      CommandTokens tokens = new CommandTokens();
+      tokenizer.tokenize(command, tokens);
+      return tokens;
+  }
+
+  // Test that punctuation separates words but is never part of them
+  @Test
+  void testPunctuation() {
+      CommandTokens tokens = tokenize("simon: get, the axe!!  (please)");
+      assertEquals("get the axe please", tokens.toString());
+      assertEquals(4, tokens.size());
+      assertEquals("axe", tokens.word(2));
+      assertTrue(tokens.is(0, CommandTokenizer.BASIC_COMMAND));
+      assertTrue(tokens.is(1, CommandTokenizer.STOPWORD));
+  }
+
+  // Test that commands and player names are lowercased
+  @Test
+  void testMixedCase() {
+      CommandTokens tokens = tokenize("Simon: GeT tHe AXE");
+      assertEquals("simon", tokens.getUserName());
+      assertEquals("get the axe", tokens.toString());
+      assertEquals("get", tokens.word(0));
+      assertEquals("axe", tokens.word(2));
+  }
+
+  // Test that hyphens and underscores stay inside names
+  @Test
+  void testHyphensAndUnderscores() {
+      CommandTokens tokens = tokenize("simon: open the Trap-Door with old_key");
+      assertEquals("trap-door", tokens.word(2));
+      assertEquals("old_key", tokens.word(4));
+      assertNull(tokenize("simon: open the trap door").word(2));
+      assertEquals("trap-door", CommandTokenizer.normalize("Open  TRAP-DOOR").split(" ")[1]);
+  }
+
+  // Test that multi-word triggers are matched over the tokenized text whatever the spacing and case
+  @Test
+  void testMultiWordTriggers() {
+      TriggerMatcher matcher = new TriggerMatcher(List.of("cut", "cut down", "unlock trap-door"));
+      assertEquals("cut down", matcher.match(tokenize("simon: please CUT   down, the tree").toString()));
+      assertEquals("cut", matcher.match(tokenize("simon: cut the tree down").toString()));
+      assertEquals("unlock trap-door", matcher.match(tokenize("simon: Unlock Trap-Door").toString()));
+      assertNull(matcher.match(tokenize("simon: unlock trap-doors").toString()));
+  }
+}
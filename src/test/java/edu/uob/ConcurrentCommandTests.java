@@ -0,0 +1,171 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+final class ConcurrentCommandTests {
+
+  private static final int PLAYERS = 8;
+  private static final int ROUNDS = 500;
+
+  private GameServer server;
+
+  @BeforeEach
+  void setup() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      server = new GameServer(entitiesFile, actionsFile);
+  }
+
+  private void runPlayers(String... commands) throws Exception {
+      ExecutorService pool = Executors.newFixedThreadPool(PLAYERS);
+      List<Future<?>> results = new ArrayList<>();
+      for (int p = 0; p < PLAYERS; p++) {
+          String name = "player" + p;
+          results.add(pool.submit(() -> {
+              for (int round = 0; round < ROUNDS; round++) {
+                  for (String command : commands) {
+                      server.handleCommand(name + ": " + command);
+                  }
+              }
+          }));
+      }
+      for (Future<?> result : results) {
+          result.get();
+      }
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS), "Players did not finish");
+  }
+
+  private static int occurrences(String text, String word) {
+      int count = 0;
+      for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + 1)) {
+          count++;
+      }
+      return count;
+  }
+
+  // Players fighting over the same axe must never duplicate or lose it
+  @Test
+  void testArtefactIsNeverDuplicated() throws Exception {
+      runPlayers("get axe", "drop axe");
+      int axes = occurrences(server.handleCommand("simon: look"), "axe (");
+      for (int p = 0; p < PLAYERS; p++) {
+          axes += occurrences(server.handleCommand("player" + p + ": inv"), "axe (");
+      }
+      assertEquals(1, axes, "There should be exactly one axe in the world");
+  }
+
+  // Players wandering between rooms must always be in exactly one place
+  @Test
+  void testPlayersAreNeverLost() throws Exception {
+      runPlayers("goto forest", "look", "goto cabin");
+      String cabin = server.handleCommand("simon: look");
+      for (int p = 0; p < PLAYERS; p++) {
+          assertEquals(1, occurrences(cabin, "player" + p + " "), "player" + p + " should be back in the cabin");
+      }
+  }
+
+  private static void finish(ExecutorService pool, List<Future<?>> results) throws Exception {
+      try {
+          for (Future<?> result : results) {
+              result.get(30, TimeUnit.SECONDS);
+          }
+      } catch (TimeoutException e) {
+          fail("Commands locking the same locations in different orders deadlocked");
+      } finally {
+          pool.shutdownNow();
+      }
+  }
+
+  // Crossing moves and an action touching both locations must never deadlock or lose anything
+  @Test
+  void testCrossingCommandsDontDeadlock() throws Exception {
+      server.handleCommand("south: goto forest");
+      server.handleCommand("tracker: goto forest");
+      server.handleCommand("tracker: goto riverbank");
+      server.handleCommand("tracker: get horn");
+      server.handleCommand("tracker: goto forest");
+
+      ExecutorService pool = Executors.newFixedThreadPool(3);
+      List<Future<?>> results = new ArrayList<>();
+      // north locks cabin then forest while south locks forest then cabin
+      results.add(pool.submit(() -> {
+          for (int round = 0; round < ROUNDS; round++) {
+              server.handleCommand("north: goto forest");
+              server.handleCommand("north: goto cabin");
+          }
+      }));
+      results.add(pool.submit(() -> {
+          for (int round = 0; round < ROUNDS; round++) {
+              server.handleCommand("south: goto cabin");
+              server.handleCommand("south: goto forest");
+          }
+      }));
+      // the lumberjack is pulled from wherever it is, so this locks both locations at once
+      results.add(pool.submit(() -> {
+          for (int round = 0; round < ROUNDS; round++) {
+              server.handleCommand("tracker: blow horn");
+              server.handleCommand("tracker: goto cabin");
+              server.handleCommand("tracker: blow horn");
+              server.handleCommand("tracker: goto forest");
+          }
+      }));
+      finish(pool, results);
+
+      String cabin = server.handleCommand("simon: look");
+      server.handleCommand("sion: goto forest");
+      String forest = server.handleCommand("sion: look");
+      assertEquals(1, occurrences(cabin + forest, "lumberjack ("), "There should be exactly one lumberjack");
+      assertEquals(1, occurrences(cabin, "north "), "north should be back in the cabin");
+      assertEquals(0, occurrences(forest, "north "), "north should only be in the cabin");
+      assertEquals(1, occurrences(forest, "south "), "south should be back in the forest");
+      assertEquals(0, occurrences(cabin, "south "), "south should only be in the forest");
+      assertEquals(1, occurrences(forest, "tracker "), "tracker should be back in the forest");
+      assertTrue(server.handleCommand("tracker: inv").contains("horn"), "tracker should still have the horn");
+  }
+
+  // A command only waits for the stripes of the locations it touches
+  @Test
+  void testCommandsOnOtherStripesRunInParallel() throws Exception {
+      server.handleCommand("simon: look");
+      server.handleCommand("sion: goto forest");
+      LockStripes locks = server.getLocationLocks();
+      ReentrantLock riverbank = locks.lockFor("riverbank");
+      assertNotEquals(locks.stripeOf("riverbank"), locks.stripeOf("cabin"), "The test needs the riverbank on a stripe of its own");
+      assertNotEquals(locks.stripeOf("riverbank"), locks.stripeOf("forest"), "The test needs the riverbank on a stripe of its own");
+      assertNotEquals(locks.stripeOf("riverbank"), locks.stripeOf("storeroom"), "The test needs the riverbank on a stripe of its own");
+      assertNotEquals(new LockStripes(64).stripeOf("simon"), new LockStripes(64).stripeOf("sion"), "The test needs the players on stripes of their own");
+
+      ExecutorService pool = Executors.newFixedThreadPool(2);
+      Future<String> blocked;
+      riverbank.lock();
+      try {
+          blocked = pool.submit(() -> server.handleCommand("sion: goto riverbank"));
+          // sion may be holding the forest while waiting, but the cabin is free
+          Future<String> free = pool.submit(() -> server.handleCommand("simon: get axe") + server.handleCommand("simon: inv"));
+          assertTrue(free.get(10, TimeUnit.SECONDS).contains("razor sharp axe"), "A command on other stripes should not wait");
+          assertFalse(blocked.isDone(), "A command on the held stripe should wait for it");
+      } finally {
+          riverbank.unlock();
+      }
+      assertTrue(blocked.get(10, TimeUnit.SECONDS).contains("riverbank"), "The waiting command should go ahead once the stripe is free");
+      pool.shutdown();
+  }
+}
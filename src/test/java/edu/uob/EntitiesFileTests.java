@@ -2,15 +2,23 @@ package edu.uob;
 
 import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
+import java.util.List;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import com.alexmerz.graphviz.Parser;
 import com.alexmerz.graphviz.ParseException;
 import com.alexmerz.graphviz.objects.Graph;
 import com.alexmerz.graphviz.objects.Node;
 import com.alexmerz.graphviz.objects.Edge;
 
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -51,4 +59,55 @@ final class EntitiesFileTests {
       }
   }
 
+  // The streaming reader should find the same locations, entities and paths as the graphviz parser
+  @Test
+  void testExtendedEntitiesFileIsStreamed() throws Exception {
+      WorldBundle bundle = new WorldBundle();
+      new EntitiesFileReader(new File("config" + File.separator + "extended-entities.dot")).read(bundle);
+
+      Parser parser = new Parser();
+      parser.parse(new FileReader("config" + File.separator + "extended-entities.dot"));
+      ArrayList<Graph> sections = parser.getGraphs().get(0).getSubgraphs();
+      ArrayList<Graph> locations = sections.get(0).getSubgraphs();
+      assertEquals(locations.size(), bundle.getLocations().size());
+      for (int i = 0; i < locations.size(); i++) {
+          Node locationDetails = locations.get(i).getNodes(false).get(0);
+          WorldBundle.LocationDefinition location = bundle.getLocations().get(i);
+          assertEquals(locationDetails.getId().getId(), location.getName());
+          assertEquals(locationDetails.getAttribute("description"), location.getDescription());
+          for (Graph entities : locations.get(i).getSubgraphs()) {
+              String name = entities.getId().getId();
+              List<WorldBundle.EntityDefinition> definitions = name.equals("characters") ? location.getCharacters()
+                      : name.equals("artefacts") ? location.getArtefacts() : location.getFurniture();
+              ArrayList<Node> nodes = entities.getNodes(false);
+              assertEquals(nodes.size(), definitions.size(), "Wrong number of " + name + " in " + location.getName());
+              for (int j = 0; j < nodes.size(); j++) {
+                  assertEquals(nodes.get(j).getId().getId(), definitions.get(j).getName());
+                  assertEquals(nodes.get(j).getAttribute("description"), definitions.get(j).getDescription());
+              }
+          }
+      }
+      ArrayList<Edge> paths = sections.get(1).getEdges();
+      assertEquals(paths.size(), bundle.getPaths().size());
+      for (int i = 0; i < paths.size(); i++) {
+          assertEquals(paths.get(i).getSource().getNode().getId().getId(), bundle.getPaths().get(i)[0]);
+          assertEquals(paths.get(i).getTarget().getNode().getId().getId(), bundle.getPaths().get(i)[1]);
+      }
+  }
+
+  // Syntax errors should be reported with their line number
+  @Test
+  void testSyntaxErrorIsReported(@TempDir Path directory) throws IOException {
+      Path file = directory.resolve("entities.dot");
+      Files.writeString(file, String.join("\n",
+              "digraph layout {",
+              "    subgraph locations {",
+              "        subgraph cluster001 {",
+              "            cabin [description = \"A log cabin\";",
+              "        }",
+              "    }",
+              "}"));
+      IOException error = assertThrows(IOException.class, () -> new EntitiesFileReader(file.toFile()).read(new WorldBundle()));
+      assertTrue(error.getMessage().contains(":5: "), error.getMessage());
+  }
 }
@@ -0,0 +1,47 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class EntityIndexTests {
+
+  private GameServer server;
+
+  @BeforeEach
+  void setup() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      server = new GameServer(entitiesFile, actionsFile);
+  }
+
+  // Test that a player named like a produced artefact doesn't get produced instead of it
+  @Test
+  void testPlayerNamedLikeProducedArtefact() {
+      server.handleCommand("log: get axe");
+      server.handleCommand("log: goto forest");
+      assertTrue(server.handleCommand("log: chop tree").contains("cut down the tree"), "Did not chop the tree");
+      String look = server.handleCommand("log: look");
+      assertTrue(look.contains("A heavy wooden log"), "No log was produced");
+      assertTrue(look.contains("forest"), "The player was moved instead of the log");
+      assertFalse(server.handleCommand("simon: look").contains("log (A player)"), "The player was moved to the cabin");
+  }
+
+  // Test that a player named like a consumed artefact doesn't get consumed instead of it
+  @Test
+  void testPlayerNamedLikeConsumedArtefact() {
+      server.handleCommand("key: goto forest");
+      server.handleCommand("key: get key");
+      server.handleCommand("key: goto cabin");
+      server.handleCommand("key: unlock trapdoor");
+      assertFalse(server.handleCommand("key: inv").contains("key"), "The key was not consumed");
+      String look = server.handleCommand("key: look");
+      assertTrue(look.contains("cabin"), "The player was moved to the storeroom");
+      assertTrue(look.contains("cellar"), "The trapdoor was not unlocked");
+      assertTrue(server.handleCommand("simon: look").contains("key (A player)"), "The player is missing from the cabin");
+  }
+}
@@ -232,6 +232,18 @@ class ExampleSTAGTests {
         assertFalse(response.contains("tree"), "The tree should have been chopped down");
     }
 
+    @Test
+    void testMultiWordTrigger()
+    {
+        String response;
+        sendCommandToServer("simon: get axe");
+        sendCommandToServer("simon: goto forest");
+        response = sendCommandToServer("simon: cut down the tree");
+        assertTrue(response.contains("cut down the tree"), "Cutting down the tree should have worked");
+        response = sendCommandToServer("simon: look");
+        assertTrue(response.contains("log"), "A log should have appeared after cutting down the tree");
+    }
+
     @Test
     void testPlayerHealthDrop()
     {
@@ -0,0 +1,86 @@
+package edu.uob;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+final class GameConnectionTests {
+
+  private static final char END_OF_TRANSMISSION = 4;
+
+  private ServerSocket serverSocket;
+  private Thread serverThread;
+  // every command the fake server received
+  private final List<String> received = new CopyOnWriteArrayList<>();
+
+  // a server which answers the first few commands it gets, closing every connection after one
+  // command unless it keeps them open, and drops the connection of any later command unanswered
+  private int startServer(boolean keepOpen, int answers) throws IOException {
+      serverSocket = new ServerSocket(0);
+      serverThread = new Thread(() -> {
+          while (!serverSocket.isClosed()) {
+              try (Socket socket = serverSocket.accept()) {
+                  BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                  OutputStream out = socket.getOutputStream();
+                  String command = reader.readLine();
+                  while (command != null) {
+                      received.add(command);
+                      if (received.size() > answers) {
+                          break;
+                      }
+                      out.write(("You said " + command + "\n" + END_OF_TRANSMISSION + "\n").getBytes(StandardCharsets.UTF_8));
+                      out.flush();
+                      command = keepOpen ? reader.readLine() : null;
+                  }
+              } catch (IOException e) {
+                  // stopped
+              }
+          }
+      });
+      serverThread.start();
+      return serverSocket.getLocalPort();
+  }
+
+  @AfterEach
+  void teardown() throws Exception {
+      serverSocket.close();
+      serverThread.join(1000);
+  }
+
+  // Test that a connection the server closed after its response is opened again before the next command
+  @Test
+  void testReconnectsToServerWhichClosesConnections() throws Exception {
+      int port = startServer(false, 2);
+      try (GameConnection connection = new GameConnection("localhost", port, "simon")) {
+          assertEquals("You said simon: look\n", connection.send("look"));
+          // give the server time to close the connection
+          Thread.sleep(50);
+          assertEquals("You said simon: inv\n", connection.send("inv"));
+      }
+      assertEquals(List.of("simon: look", "simon: inv"), received, "Every command should have been sent once");
+  }
+
+  // Test that a command is not sent again when the connection fails after it was written
+  @Test
+  void testFailedCommandIsNotSentTwice() throws Exception {
+      int port = startServer(true, 1);
+      try (GameConnection connection = new GameConnection("localhost", port, "simon")) {
+          assertEquals("You said simon: look\n", connection.send("look"));
+          // the server reads this one, then drops the connection
+          assertThrows(IOException.class, () -> connection.send("get axe"));
+      }
+      Thread.sleep(50);
+      assertEquals(List.of("simon: look", "simon: get axe"), received, "The command should only have been sent once");
+  }
+}
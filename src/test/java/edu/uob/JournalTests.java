@@ -0,0 +1,213 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class JournalTests {
+
+  private File entitiesFile;
+  private File actionsFile;
+
+  @TempDir
+  Path directory;
+
+  @BeforeEach
+  void setup() {
+      entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+  }
+
+  private GameServer recover(File snapshot, File journal) throws IOException {
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      if (snapshot != null) {
+          server.restoreSnapshot(snapshot);
+      }
+      server.openJournal(journal);
+      return server;
+  }
+
+  @Test
+  void testReplayOnTopOfConfig() throws IOException {
+      File journal = directory.resolve("journal").toFile();
+      GameServer server = recover(null, journal);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: chop tree with axe");
+      server.handleCommand("sion: look");
+
+      GameServer recovered = recover(null, journal);
+      String response = recovered.handleCommand("simon: look").toLowerCase();
+      assertTrue(response.contains("forest"), "Simon should still be in the forest");
+      assertTrue(response.contains("log"), "The chopped tree should have left a log behind");
+      assertTrue(recovered.handleCommand("simon: inv").toLowerCase().contains("axe"), "Simon should still have the axe");
+      assertTrue(recovered.handleCommand("simon: goto cabin").toLowerCase().contains("cabin"));
+      assertTrue(recovered.handleCommand("simon: look").toLowerCase().contains("sion"), "Sion joined in the cabin before the crash");
+  }
+
+  @Test
+  void testReplayAfterSnapshot() throws IOException {
+      File snapshot = directory.resolve("world.snapshot").toFile();
+      File journal = directory.resolve("journal").toFile();
+      GameServer server = recover(null, journal);
+      server.handleCommand("simon: get potion");
+      server.saveSnapshot(snapshot);
+      server.handleCommand("simon: drink potion");
+      server.handleCommand("simon: get axe");
+
+      GameServer recovered = recover(snapshot, journal);
+      String response = recovered.handleCommand("simon: inv").toLowerCase();
+      assertTrue(response.contains("axe"), "The axe was picked up after the snapshot");
+      assertFalse(response.contains("potion"), "The potion was drunk after the snapshot");
+      assertFalse(recovered.handleCommand("simon: look").toLowerCase().contains("potion"),
+              "The potion picked up before the snapshot must not come back");
+  }
+
+  @Test
+  void testSnapshotTruncatesJournal() throws IOException {
+      Path journal = directory.resolve("journal");
+      List<String> replayed = new ArrayList<>();
+      CommandJournal commands = CommandJournal.open(journal, 0, (type, text) -> replayed.add(text), 64);
+      for (int i = 0; i < 20; i++) {
+          commands.append(CommandJournal.COMMAND, "simon: look " + i);
+          commands.awaitDurable();
+      }
+      assertTrue(segments(journal) > 1, "The journal should have been split into segments");
+      commands.truncate(15);
+      commands.close();
+
+      CommandJournal reopened = CommandJournal.open(journal, 15, (type, text) -> replayed.add(text), 64);
+      reopened.close();
+      assertEquals(List.of("simon: look 15", "simon: look 16", "simon: look 17", "simon: look 18", "simon: look 19"), replayed);
+  }
+
+  @Test
+  void testTornRecordIsCutOff() throws IOException {
+      Path journal = directory.resolve("journal");
+      CommandJournal commands = CommandJournal.open(journal, 0, (type, text) -> { });
+      commands.append(CommandJournal.JOINED, "simon");
+      commands.append(CommandJournal.COMMAND, "simon: get axe");
+      commands.awaitDurable();
+      commands.close();
+      Path last;
+      try (Stream<Path> files = Files.list(journal)) {
+          last = files.filter(file -> file.toFile().length() > 0).findFirst().orElseThrow();
+      }
+      Files.write(last, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+      List<String> replayed = new ArrayList<>();
+      CommandJournal.open(journal, 0, (type, text) -> replayed.add(text)).close();
+      assertEquals(List.of("simon", "simon: get axe"), replayed);
+  }
+
+  private static long segments(Path journal) throws IOException {
+      try (Stream<Path> files = Files.list(journal)) {
+          return files.count();
+      }
+  }
+
+  @Test
+  void testWhenDurableCallsBack() throws Exception {
+      Path segments = directory.resolve("callbacks");
+      try (CommandJournal journal = CommandJournal.open(segments, 0, (type, text) -> { })) {
+          boolean[] early = new boolean[1];
+          journal.whenDurable(durable -> early[0] = durable);
+          assertTrue(early[0], "Nothing was appended, so it should call back right away");
+
+          journal.append(CommandJournal.COMMAND, "simon: get axe");
+          CountDownLatch written = new CountDownLatch(1);
+          boolean[] saved = new boolean[1];
+          journal.whenDurable(durable -> {
+              saved[0] = durable;
+              written.countDown();
+          });
+          assertTrue(written.await(5, TimeUnit.SECONDS), "The flusher thread never called back");
+          assertTrue(saved[0], "The record should have been written");
+      }
+      List<String> replayed = new ArrayList<>();
+      CommandJournal.open(segments, 0, (type, text) -> replayed.add(text)).close();
+      assertEquals(List.of("simon: get axe"), replayed, "The record should be on disk once it called back");
+  }
+
+  // Test that waiting covers the records of other threads, whose changes a response may show
+  @Test
+  void testWaitCoversOtherThreads() throws Exception {
+      Path segments = directory.resolve("others");
+      try (CommandJournal journal = CommandJournal.open(segments, 0, (type, text) -> { })) {
+          Thread writer = new Thread(() -> journal.append(CommandJournal.COMMAND, "simon: get axe"));
+          writer.start();
+          writer.join();
+          // nothing has written the record yet, so it has to be written before calling back
+          CountDownLatch written = new CountDownLatch(1);
+          String[] thread = new String[1];
+          journal.whenDurable(durable -> {
+              thread[0] = Thread.currentThread().getName();
+              written.countDown();
+          });
+          assertTrue(written.await(5, TimeUnit.SECONDS), "The flusher thread never called back");
+          assertEquals("journal-flusher", thread[0], "A thread which appended nothing should still wait for the record");
+      }
+  }
+
+  @Test
+  void testNonBlockingServerSendsOnceDurable() throws Exception {
+      File journal = directory.resolve("journal").toFile();
+      GameServer server = recover(null, journal);
+      int port;
+      try (ServerSocket probe = new ServerSocket(0)) {
+          port = probe.getLocalPort();
+      }
+      Thread serverThread = new Thread(() -> {
+          try {
+              server.nonBlockingListenOn(port);
+          } catch (IOException e) {
+              // server stopped
+          }
+      });
+      serverThread.start();
+      try {
+          for (int attempt = 0; ; attempt++) {
+              try {
+                  new Socket("localhost", port).close();
+                  break;
+              } catch (IOException e) {
+                  assertTrue(attempt < 50, "Server did not start");
+                  Thread.sleep(20);
+              }
+          }
+          try (GameConnection connection = new GameConnection("localhost", port, "simon")) {
+              assertTrue(connection.send("get axe").contains("axe"), "Did not get the axe");
+              List<String> responses = connection.sendBatch(List.of("goto forest", "look", "chop tree"));
+              assertTrue(responses.get(1).contains("key"), "Did not move to the forest");
+          }
+          try (GameConnection binary = new GameConnection("localhost", port, "sion", true)) {
+              assertTrue(binary.send("get potion").contains("potion"), "Did not get the potion");
+          }
+
+          // every response above was only sent once its changes were in the journal
+          GameServer recovered = recover(null, journal);
+          assertTrue(recovered.handleCommand("simon: look").contains("A heavy wooden log"), "The chopped tree should be in the journal");
+          assertTrue(recovered.handleCommand("sion: inv").contains("potion"), "The binary command should be in the journal");
+      } finally {
+          serverThread.interrupt();
+          serverThread.join(1000);
+      }
+  }
+}
@@ -0,0 +1,96 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class LocationFeedTests {
+
+  // collects the text of every pushed frame
+  private static final class Collector implements LocationFeed.Subscriber {
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void push(byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        assertEquals(frame.length - Integer.BYTES, buffer.getInt());
+        assertEquals(BinaryProtocol.EVENT, buffer.get());
+        events.add(StandardCharsets.UTF_8.decode(buffer).toString());
+    }
+  }
+
+  // Test that the changes of a tick are coalesced into one event per location
+  @Test
+  void testCoalescing() {
+      LocationFeed feed = new LocationFeed(0);
+      Location cabin = new Location("cabin", "A log cabin");
+      Collector first = new Collector();
+      Collector second = new Collector();
+      cabin.subscribe(feed, first);
+      cabin.subscribe(feed, second);
+
+      Artefact axe = new Artefact("axe", "A razor sharp axe");
+      cabin.addArtefact(axe);
+      cabin.removeArtefact("axe");
+      feed.tick();
+      assertTrue(first.events.isEmpty(), "Changes which cancel out were pushed");
+
+      cabin.addArtefact(axe);
+      cabin.removeArtefact("axe");
+      cabin.addArtefact(axe);
+      cabin.addCharacter(new Player("sion"));
+      cabin.addTo("forest", "A dark forest");
+      feed.tick();
+      assertEquals(List.of("cabin\n+artefact axe\n+player sion\n+path forest\n"), first.events);
+      assertEquals(first.events, second.events, "Every subscriber gets the same event");
+
+      cabin.unsubscribe(second);
+      cabin.removeArtefact("axe");
+      feed.tick();
+      assertEquals(2, first.events.size());
+      assertEquals(1, second.events.size(), "An unsubscribed session still got events");
+  }
+
+  // Test that a subscription follows its player and only reports other players' changes
+  @Test
+  void testSubscriptionFollowsPlayer() throws InterruptedException {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      Collector sion = new Collector();
+      server.subscribe("sion", sion);
+      server.handleCommand("sion: look");
+      server.handleCommand("simon: get axe");
+      assertTrue(awaitEvent(sion, "-artefact axe"), "Did not see the axe being taken");
+      assertTrue(sion.events.stream().anyMatch(event -> event.contains("+player simon")), "Did not see simon arrive");
+
+      server.handleCommand("sion: goto forest");
+      server.handleCommand("simon: goto forest");
+      assertTrue(awaitEvent(sion, "forest\n+player simon"), "The subscription did not follow sion to the forest");
+      assertFalse(sion.events.stream().anyMatch(event -> event.contains("sion")), "Sion was told about its own moves");
+
+      server.unsubscribe("sion", sion);
+      int seen = sion.events.size();
+      server.handleCommand("simon: get key");
+      Thread.sleep(200);
+      assertEquals(seen, sion.events.size(), "Events were pushed after unsubscribing");
+  }
+
+  private static boolean awaitEvent(Collector collector, String text) throws InterruptedException {
+      for (int attempt = 0; attempt < 100; attempt++) {
+          if (collector.events.stream().anyMatch(event -> event.contains(text))) {
+              return true;
+          }
+          Thread.sleep(20);
+      }
+      return false;
+  }
+}
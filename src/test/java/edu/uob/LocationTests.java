@@ -0,0 +1,119 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class LocationTests {
+
+  // Test that a player doesn't replace a character with the same name
+  @Test
+  void testPlayerNamedLikeCharacter() {
+      Location cellar = new Location("cellar", "A dusty cellar");
+      cellar.addCharacter(new Character("elf", "An angry looking Elf"));
+      cellar.addCharacter(new Player("elf"));
+      assertEquals(2, cellar.getCharacters().size(), "The player replaced the elf");
+      cellar.removePlayer("elf");
+      assertEquals(1, cellar.getCharacters().size());
+      assertTrue(cellar.toString().contains("An angry looking Elf"), "The elf left with the player");
+  }
+
+  // Test that the elf is still in the cellar after a player called elf has been there
+  @Test
+  void testPlayerNamedLikeCharacterInGame() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      server.handleCommand("elf: goto forest");
+      server.handleCommand("elf: get key");
+      server.handleCommand("elf: goto cabin");
+      server.handleCommand("elf: unlock trapdoor");
+      assertTrue(server.handleCommand("elf: goto cellar").contains("cellar"), "Did not get into the cellar");
+      assertTrue(server.handleCommand("elf: look").contains("An angry looking Elf"), "The elf is not in the cellar");
+      server.handleCommand("elf: goto cabin");
+      server.handleCommand("simon: goto cellar");
+      String look = server.handleCommand("simon: look");
+      assertTrue(look.contains("An angry looking Elf"), "The elf left the cellar with the player");
+      assertTrue(!look.contains("elf (A player)"), "The player called elf is still in the cellar");
+  }
+
+  // what "look" shows, both from the cached string and rendered into a sink
+  private static String look(Location location) {
+      StringBuilder rendered = new StringBuilder();
+      location.renderTo(ResponseSink.of(rendered));
+      assertEquals(location.toString(), rendered.toString(), "The cached and the rendered look differ");
+      return rendered.toString();
+  }
+
+  // Test that nothing is rendered again while nothing changes
+  @Test
+  void testUnchangedLookIsCached() {
+      Location cabin = new Location("cabin", "A log cabin in the woods");
+      cabin.addArtefact(new Artefact("axe", "A razor sharp axe"));
+      String first = cabin.toString();
+      assertSame(first, cabin.toString(), "An unchanged location should not be rendered again");
+  }
+
+  // Test that adding and removing an artefact shows in the next look
+  @Test
+  void testArtefactChangesRenderAgain() {
+      Location cabin = new Location("cabin", "A log cabin in the woods");
+      assertFalse(look(cabin).contains("axe"));
+      cabin.addArtefact(new Artefact("axe", "A razor sharp axe"));
+      assertTrue(look(cabin).contains("axe (A razor sharp axe)"), "The added artefact is missing");
+      cabin.removeArtefact("axe");
+      assertFalse(look(cabin).contains("axe"), "The removed artefact is still shown");
+  }
+
+  // Test that adding and removing a character shows in the next look
+  @Test
+  void testCharacterChangesRenderAgain() {
+      Location cellar = new Location("cellar", "A dusty cellar");
+      assertFalse(look(cellar).contains("elf"));
+      cellar.addCharacter(new Character("elf", "An angry looking Elf"));
+      assertTrue(look(cellar).contains("elf (An angry looking Elf)"), "The added character is missing");
+      cellar.removeCharacter("elf");
+      assertFalse(look(cellar).contains("elf"), "The removed character is still shown");
+  }
+
+  // Test that a player arriving and leaving shows in the next look
+  @Test
+  void testPlayerChangesRenderAgain() {
+      Location cabin = new Location("cabin", "A log cabin in the woods");
+      assertFalse(look(cabin).contains("simon"));
+      cabin.addCharacter(new Player("simon"));
+      assertTrue(look(cabin).contains("simon (A player)"), "The arriving player is missing");
+      cabin.removePlayer("simon");
+      assertFalse(look(cabin).contains("simon"), "The player who left is still shown");
+  }
+
+  // Test that adding and removing furniture shows in the next look
+  @Test
+  void testFurnitureChangesRenderAgain() {
+      Location cabin = new Location("cabin", "A log cabin in the woods");
+      assertFalse(look(cabin).contains("trapdoor"));
+      cabin.addFurniture(new Furniture("trapdoor", "Wooden trapdoor"));
+      assertTrue(look(cabin).contains("trapdoor (Wooden trapdoor)"), "The added furniture is missing");
+      cabin.removeFurniture("trapdoor");
+      assertFalse(look(cabin).contains("trapdoor"), "The removed furniture is still shown");
+  }
+
+  // Test that a new path shows in the next look
+  @Test
+  void testNewPathRendersAgain() {
+      Location cabin = new Location("cabin", "A log cabin in the woods");
+      Location cellar = new Location("cellar", "A dusty cellar");
+      assertFalse(look(cabin).contains("cellar"));
+      cabin.addTo(cellar);
+      assertTrue(look(cabin).contains("cellar (A dusty cellar)"), "The new path is missing");
+      // a path in only changes where it leads from
+      String before = cellar.toString();
+      cellar.addFrom(cabin);
+      assertSame(before, cellar.toString(), "A path leading here isn't shown, so nothing should be rendered again");
+  }
+}
@@ -0,0 +1,60 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class MetricsTests {
+
+  @Test
+  void testHistogramPrecision() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long value = 1; value <= 1000; value++) {
+          histogram.record(value * 1000);
+      }
+      assertEquals(1000, histogram.getCount());
+      assertEquals(1_000_000, histogram.getMax());
+      long p50 = histogram.getValueAtPercentile(50);
+      long p99 = histogram.getValueAtPercentile(99);
+      assertTrue(Math.abs(p50 - 500_000) <= 500_000 * 0.04, "p50 should be within the bucket precision: " + p50);
+      assertTrue(Math.abs(p99 - 990_000) <= 990_000 * 0.04, "p99 should be within the bucket precision: " + p99);
+      assertEquals(1_000_000, histogram.getValueAtPercentile(100), "The top percentile is capped by the max");
+  }
+
+  @Test
+  void testBucketsAreContiguous() {
+      // every value falls into the bucket whose range holds it
+      for (long value = 0; value < 1 << 20; value += 7) {
+          int bucket = LatencyHistogram.bucketOf(value);
+          assertTrue(value <= LatencyHistogram.highestValueIn(bucket), "value " + value);
+          assertTrue(bucket == 0 || value > LatencyHistogram.highestValueIn(bucket - 1), "value " + value);
+      }
+  }
+
+  @Test
+  void testServerRecordsCommands() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      server.handleCommand("simon: look");
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: get axe");
+      server.handleCommand("sion: goto forest");
+      server.handleCommand("sion: chop tree");
+      server.handleCommand("sion: dance");
+
+      ServerMetrics metrics = server.getMetrics();
+      assertEquals(1, metrics.getCommandCounts().get("look"));
+      assertEquals(2, metrics.getCommandCounts().get("get"));
+      assertEquals(1, metrics.getCommandCounts().get("chop"));
+      assertEquals(1, metrics.getCommandCounts().get("invalid"));
+      assertEquals(1, metrics.getErrorCounts().get("[Error]: Can't find the artefact, please try again"));
+      assertEquals(2, metrics.getPlayers());
+      // get axe and goto forest, chopping without the axe changed nothing
+      assertEquals(2, metrics.getMutations());
+      assertTrue(metrics.dump().contains("command get count=2"));
+  }
+}
@@ -0,0 +1,181 @@
+package edu.uob;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class NonBlockingServerTests {
+
+  private static final char END_OF_TRANSMISSION = 4;
+
+  private GameServer server;
+  private Thread serverThread;
+  private int port;
+
+  @BeforeEach
+  void setup() throws Exception {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      server = new GameServer(entitiesFile, actionsFile);
+      try (ServerSocket probe = new ServerSocket(0)) {
+          port = probe.getLocalPort();
+      }
+      serverThread = new Thread(() -> {
+          try {
+              server.nonBlockingListenOn(port);
+          } catch (IOException e) {
+              // server stopped
+          }
+      });
+      serverThread.start();
+  }
+
+  @AfterEach
+  void teardown() throws InterruptedException {
+      serverThread.interrupt();
+      serverThread.join(1000);
+  }
+
+  private static String readResponse(BufferedReader reader) throws IOException {
+      StringBuilder response = new StringBuilder();
+      String line = reader.readLine();
+      while (line != null && !line.contains("" + END_OF_TRANSMISSION)) {
+          response.append(line).append("\n");
+          line = reader.readLine();
+      }
+      return response.toString();
+  }
+
+  private Socket connect() throws InterruptedException {
+      for (int attempt = 0; attempt < 50; attempt++) {
+          try {
+              return new Socket("localhost", port);
+          } catch (IOException e) {
+              Thread.sleep(20);
+          }
+      }
+      throw new IllegalStateException("Server did not start");
+  }
+
+  // Test that several commands can be sent over a single connection
+  @Test
+  void testManyCommandsOnOneConnection() throws Exception {
+      try (Socket socket = connect();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+          // pipeline two commands in one write
+          writer.write("simon: get axe\nsimon: inv\n");
+          writer.flush();
+          assertTrue(readResponse(reader).contains("axe"), "Did not get the axe");
+          assertTrue(readResponse(reader).contains("axe"), "The axe is not in the inventory");
+
+          writer.write("simon: goto forest\n");
+          writer.flush();
+          readResponse(reader);
+          writer.write("simon: look\n");
+          writer.flush();
+          assertTrue(readResponse(reader).contains("key"), "Did not move to the forest");
+      }
+  }
+
+  // Test that a batch gets one response per command, in order
+  @Test
+  void testBatchOnOneConnection() throws Exception {
+      connect().close();
+      try (GameConnection connection = new GameConnection("localhost", port, "simon")) {
+          List<String> responses = connection.sendBatch(List.of("get axe", "inv", "goto forest", "look"));
+          assertEquals(4, responses.size(), "Did not get a response for every command");
+          assertTrue(responses.get(1).contains("axe"), "The axe is not in the inventory");
+          assertTrue(responses.get(3).contains("key"), "Did not move to the forest");
+          assertTrue(connection.send("inv").contains("axe"), "Single commands don't work after a batch");
+      }
+  }
+
+  // Test that a client can switch to length-prefixed frames when it connects
+  @Test
+  void testBinaryProtocol() throws Exception {
+      connect().close();
+      try (GameConnection connection = new GameConnection("localhost", port, "simon", true)) {
+          assertTrue(connection.send("get axe").contains("axe"), "Did not get the axe");
+          List<String> responses = connection.sendBatch(List.of("inv", "goto forest", "look"));
+          assertTrue(responses.get(0).contains("axe"), "The axe is not in the inventory");
+          assertTrue(responses.get(2).contains("key"), "Did not move to the forest");
+      }
+      // text clients still share the same game
+      try (GameConnection connection = new GameConnection("localhost", port, "sion")) {
+          connection.send("goto forest");
+          assertTrue(connection.send("look").contains("simon"), "The binary player is not in the game");
+      }
+  }
+
+  // Test that a subscribed binary client is told what other players change around it
+  @Test
+  void testPushedEvents() throws Exception {
+      connect().close();
+      try (GameConnection sion = new GameConnection("localhost", port, "sion", true);
+      GameConnection simon = new GameConnection("localhost", port, "simon")) {
+          sion.send("look");
+          sion.subscribe();
+          // the subscription is in place once a later command of the connection is answered
+          sion.send("inv");
+          simon.send("get axe");
+          List<String> events = List.of();
+          for (int attempt = 0; attempt < 50 && events.isEmpty(); attempt++) {
+              Thread.sleep(20);
+              events = sion.takeEvents();
+          }
+          assertTrue(events.stream().anyMatch(event -> event.contains("-artefact axe")), "Did not see the axe being taken");
+          assertTrue(sion.send("look").contains("cabin"), "Responses don't work after events");
+      }
+  }
+
+  // Test that a command waiting for a lock doesn't hold up the commands of other connections
+  @Test
+  void testWaitingCommandDoesNotStallOtherConnections() throws Exception {
+      server.handleCommand("simon: look");
+      server.handleCommand("sion: goto forest");
+      LockStripes locks = server.getLocationLocks();
+      assertNotEquals(locks.stripeOf("riverbank"), locks.stripeOf("cabin"), "The test needs the riverbank on a stripe of its own");
+      ReentrantLock riverbank = locks.lockFor("riverbank");
+      try (Socket waiting = connect();
+      Socket free = connect();
+      BufferedReader waitingReader = new BufferedReader(new InputStreamReader(waiting.getInputStream(), StandardCharsets.UTF_8));
+      BufferedWriter waitingWriter = new BufferedWriter(new OutputStreamWriter(waiting.getOutputStream(), StandardCharsets.UTF_8));
+      BufferedReader freeReader = new BufferedReader(new InputStreamReader(free.getInputStream(), StandardCharsets.UTF_8));
+      BufferedWriter freeWriter = new BufferedWriter(new OutputStreamWriter(free.getOutputStream(), StandardCharsets.UTF_8))) {
+          free.setSoTimeout(10000);
+          riverbank.lock();
+          try {
+              waitingWriter.write("sion: goto riverbank\n");
+              waitingWriter.flush();
+              for (int attempt = 0; attempt < 500 && !riverbank.hasQueuedThreads(); attempt++) {
+                  Thread.sleep(10);
+              }
+              assertTrue(riverbank.hasQueuedThreads(), "The command did not wait for the riverbank");
+              freeWriter.write("simon: get axe\nsimon: inv\n");
+              freeWriter.flush();
+              readResponse(freeReader);
+              assertTrue(readResponse(freeReader).contains("razor sharp axe"), "The other connection had to wait");
+          } finally {
+              riverbank.unlock();
+          }
+          assertTrue(readResponse(waitingReader).contains("riverbank"), "The waiting command should go ahead once the lock is free");
+      }
+  }
+}
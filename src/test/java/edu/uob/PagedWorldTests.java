@@ -0,0 +1,132 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class PagedWorldTests {
+
+  private File entitiesFile;
+  private File actionsFile;
+
+  @TempDir
+  Path directory;
+
+  @BeforeEach
+  void setup() throws IOException {
+      entitiesFile = Paths.get("config", "extended-entities.dot").toAbsolutePath().toFile();
+      actionsFile = Paths.get("config", "extended-actions.xml").toAbsolutePath().toFile();
+      // one location per region, so every move pages something in or out
+      PagedWorld.partition(WorldBundle.parse(entitiesFile, actionsFile), directory, 1);
+  }
+
+  private GameServer pagedServer() throws IOException {
+      // the start location and the storeroom alone fill the budget
+      return new GameServer(actionsFile, PagedWorld.open(directory, 2));
+  }
+
+  private static boolean isLoaded(GameServer server, String name) {
+      return server.getLocations().stream().anyMatch(location -> location.getName().equals(name));
+  }
+
+  @Test
+  void testPagedWorldPlaysLikeLoadedWorld() throws IOException {
+      GameServer loaded = new GameServer(entitiesFile, actionsFile);
+      GameServer paged = pagedServer();
+      for (String command : new String[] {"look", "get axe", "goto forest", "look", "chop tree with axe", "get log", "goto cabin",
+              "get potion", "open trapdoor", "goto cellar", "look", "goto cabin", "goto riverbank", "inv", "health"}) {
+          assertEquals(loaded.handleCommand("simon: " + command), paged.handleCommand("simon: " + command), command);
+      }
+  }
+
+  @Test
+  void testEvictedRegionKeepsChanges() throws IOException {
+      GameServer server = pagedServer();
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: drop axe");
+      server.handleCommand("simon: goto riverbank");
+      // nobody is left in the forest, so it was written back and evicted
+      assertFalse(isLoaded(server, "forest"), "The forest should have been evicted");
+      assertTrue(isLoaded(server, "cabin"), "The start location should never be evicted");
+
+      server.handleCommand("simon: goto forest");
+      assertTrue(server.handleCommand("simon: look").contains("axe"), "The axe should still be in the forest after paging it back in");
+  }
+
+  @Test
+  void testFlushedWorldReopens() throws IOException {
+      PagedWorld world = PagedWorld.open(directory, 2);
+      GameServer server = new GameServer(actionsFile, world);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: chop tree with axe");
+      world.flush();
+
+      GameServer reopened = pagedServer();
+      reopened.handleCommand("sion: goto forest");
+      String response = reopened.handleCommand("sion: look");
+      assertTrue(response.contains("log"), "The chopped tree should be saved to the forest's region");
+      assertFalse(response.contains("tree"), "The chopped tree should be saved to the forest's region");
+  }
+
+  @Test
+  void testPlayersSurviveRestart() throws IOException {
+      PagedWorld world = PagedWorld.open(directory, 2);
+      GameServer server = new GameServer(actionsFile, world);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: get key");
+      world.flush();
+
+      GameServer reopened = pagedServer();
+      String inventory = reopened.handleCommand("simon: inv");
+      assertTrue(inventory.contains("axe") && inventory.contains("key"), "The inventory should be saved with the player");
+      assertTrue(reopened.handleCommand("simon: look").contains("forest"), "The player should be back in the forest");
+      assertTrue(reopened.handleCommand("simon: chop tree").contains("cut down the tree"), "The carried axe should be usable again");
+      assertEquals(1, reopened.getPlayerCount(), "The player should not have joined twice");
+  }
+
+  @Test
+  void testProducedFromEvictedRegion() throws IOException {
+      GameServer server = pagedServer();
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: goto riverbank");
+      server.handleCommand("simon: get horn");
+      server.handleCommand("simon: blow horn");
+      server.handleCommand("simon: goto forest");
+      assertFalse(isLoaded(server, "riverbank"), "The riverbank should have been evicted with the lumberjack in it");
+
+      assertTrue(server.handleCommand("simon: blow horn").contains("lumberjack appears"), "The horn should still work");
+      assertTrue(server.handleCommand("simon: look").contains("A burly wood cutter"), "The lumberjack should be paged in and produced");
+      server.handleCommand("simon: goto riverbank");
+      assertFalse(server.handleCommand("simon: look").contains("A burly wood cutter"), "The lumberjack should have left the riverbank");
+  }
+
+  @Test
+  void testUnlockedLocationsSurviveRestart() throws IOException {
+      PagedWorld world = PagedWorld.open(directory, 2);
+      GameServer server = new GameServer(actionsFile, world);
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: get key");
+      server.handleCommand("simon: goto cabin");
+      server.handleCommand("simon: open trapdoor");
+      server.handleCommand("simon: goto forest");
+      // an unlocked location can be reached from anywhere, not only along the new path
+      assertTrue(server.handleCommand("simon: goto cellar").contains("cellar"), "The cellar should be unlocked");
+      server.handleCommand("simon: goto cabin");
+      server.handleCommand("simon: goto forest");
+      world.flush();
+
+      GameServer reopened = pagedServer();
+      assertTrue(reopened.handleCommand("simon: goto cellar").contains("cellar"), "The cellar should still be unlocked");
+  }
+}
@@ -0,0 +1,56 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class PresenceBitsTests {
+
+  @Test
+  void testCoversAcrossWords() {
+      PresenceBits inventory = new PresenceBits();
+      PresenceBits location = new PresenceBits();
+      long[] required = PresenceBits.of(3, 70, 130);
+      inventory.add(3);
+      location.add(130);
+      assertFalse(PresenceBits.covers(required, inventory, location), "70 is in neither set");
+      location.add(70);
+      assertTrue(PresenceBits.covers(required, inventory, location), "Every required ID is in one of the sets");
+      inventory.remove(3);
+      assertFalse(PresenceBits.covers(required, inventory, location), "3 was removed again");
+      assertTrue(PresenceBits.covers(PresenceBits.of(), inventory, location), "Nothing required is always covered");
+  }
+
+  @Test
+  void testLocationKeepsSharedNames() {
+      SymbolTable symbols = new SymbolTable();
+      int id = symbols.intern("lamp");
+      Location location = new Location("hall", "A hall");
+      location.addArtefact(symbols.tag(new Artefact("lamp", "A small lamp")));
+      location.addFurniture(symbols.tag(new Furniture("lamp", "A standing lamp")));
+      location.removeArtefact("lamp");
+      assertTrue(location.getPresence().contains(id), "The lamp furniture is still here");
+      location.removeFurniture("lamp");
+      assertFalse(location.getPresence().contains(id), "Both lamps are gone");
+  }
+
+  @Test
+  void testActionsIgnoreDroppedClutter() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: get potion");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: drop potion");
+      String response = server.handleCommand("simon: chop tree with axe");
+      assertFalse(response.startsWith("[Error]"), "The axe in the inventory and the tree in the forest should be enough: " + response);
+      server.handleCommand("simon: drop axe");
+      server.handleCommand("simon: get key");
+      assertTrue(server.handleCommand("simon: goto cabin").contains("cabin"));
+      assertTrue(server.handleCommand("simon: unlock trapdoor with key").startsWith("You unlock"));
+  }
+}
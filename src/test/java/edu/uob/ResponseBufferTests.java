@@ -0,0 +1,69 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+final class ResponseBufferTests {
+
+  private static final File ENTITIES_FILE = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+  private static final File ACTIONS_FILE = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+
+  // Test that responses rendered into a buffer match the responses returned as Strings
+  @Test
+  void testRenderedResponses() throws Exception {
+      GameServer returned = new GameServer(ENTITIES_FILE, ACTIONS_FILE);
+      GameServer rendered = new GameServer(ENTITIES_FILE, ACTIONS_FILE);
+      for (String command : List.of("simon: look", "simon: inv", "simon: get axe", "simon: get potion", "simon: inv",
+              "simon: goto forest", "simon: look", "simon: dance")) {
+          ResponseBuffer buffer = ResponseBuffer.acquire();
+          try {
+              rendered.handleCommand(command, buffer);
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              buffer.writeTo(out);
+              assertEquals(returned.handleCommand(command), out.toString(StandardCharsets.UTF_8), "Different response to " + command);
+              assertEquals(0, buffer.size(), "The buffer was not cleared once written");
+          } finally {
+              buffer.release();
+          }
+      }
+  }
+
+  // Test that text is encoded as UTF-8 and a buffer can be reused
+  @Test
+  void testEncoding() throws Exception {
+      ResponseBuffer buffer = ResponseBuffer.acquire();
+      try {
+          String text = "A café — with a 🔑 and a very long description ".repeat(100);
+          buffer.append(text).append('\n');
+          assertEquals(text + "\n", buffer.toString());
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          buffer.writeTo(out);
+          assertEquals(text + "\n", out.toString(StandardCharsets.UTF_8));
+          buffer.append("again");
+          assertEquals("again", buffer.toString());
+      } finally {
+          buffer.release();
+      }
+  }
+
+  // Test that a frame rendered into a buffer matches an encoded frame
+  @Test
+  void testFrames() throws Exception {
+      ResponseBuffer buffer = ResponseBuffer.acquire();
+      try {
+          buffer.beginFrame(BinaryProtocol.RESPONSE).append("You see a café\n").endFrame();
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          buffer.writeTo(out);
+          assertEquals(BinaryProtocol.frame(BinaryProtocol.RESPONSE, "You see a café\n"), ByteBuffer.wrap(out.toByteArray()));
+      } finally {
+          buffer.release();
+      }
+  }
+}
@@ -0,0 +1,95 @@
+package edu.uob;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class SessionServerTests {
+
+  private static final char END_OF_TRANSMISSION = 4;
+
+  private Thread serverThread;
+  private int port;
+
+  @BeforeEach
+  void setup() throws Exception {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      try (ServerSocket probe = new ServerSocket(0)) {
+          port = probe.getLocalPort();
+      }
+      serverThread = new Thread(() -> {
+          try {
+              server.sessionListenOn(port);
+          } catch (IOException e) {
+              // server stopped
+          }
+      });
+      serverThread.start();
+  }
+
+  @AfterEach
+  void teardown() throws InterruptedException {
+      serverThread.interrupt();
+      serverThread.join(1000);
+  }
+
+  private Socket connect() throws InterruptedException {
+      for (int attempt = 0; attempt < 50; attempt++) {
+          try {
+              return new Socket("localhost", port);
+          } catch (IOException e) {
+              Thread.sleep(20);
+          }
+      }
+      throw new IllegalStateException("Server did not start");
+  }
+
+  // Test that a client which never stops pipelining still gets its responses
+  @Test
+  void testResponsesWhileStillPipelining() throws Exception {
+      try (Socket socket = connect();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+          socket.setSoTimeout(10000);
+          OutputStream out = socket.getOutputStream();
+          byte[] commands = "simon: look\n".repeat(4096).getBytes(StandardCharsets.UTF_8);
+          // keeps the server's reader ready until the first response arrives
+          Thread pipeliner = new Thread(() -> {
+              try {
+                  while (!Thread.currentThread().isInterrupted()) {
+                      out.write(commands);
+                  }
+              } catch (IOException e) {
+                  // the test is over
+              }
+          });
+          pipeliner.start();
+          try {
+              StringBuilder response = new StringBuilder();
+              String line = reader.readLine();
+              while (line != null && !line.contains("" + END_OF_TRANSMISSION)) {
+                  response.append(line).append("\n");
+                  line = reader.readLine();
+              }
+              assertTrue(response.toString().contains("cabin"), "Did not get the response to the first command");
+          } finally {
+              pipeliner.interrupt();
+              // fails the pipeliner's next write
+              socket.shutdownOutput();
+              pipeliner.join(1000);
+          }
+      }
+  }
+}
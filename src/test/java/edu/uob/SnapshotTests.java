@@ -0,0 +1,110 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class SnapshotTests {
+
+  private File entitiesFile;
+  private File actionsFile;
+
+  @TempDir
+  Path directory;
+
+  @BeforeEach
+  void setup() {
+      entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+  }
+
+  @Test
+  void testRestoreIntoNewServer() throws IOException {
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      server.handleCommand("simon: get key");
+      server.handleCommand("simon: goto cabin");
+      server.handleCommand("simon: open trapdoor");
+      server.handleCommand("simon: drop axe");
+      File file = directory.resolve("world.snapshot").toFile();
+      server.saveSnapshot(file);
+
+      GameServer restored = new GameServer(entitiesFile, actionsFile);
+      restored.restoreSnapshot(file);
+      String response = restored.handleCommand("simon: look").toLowerCase();
+      assertTrue(response.contains("axe"), "The dropped axe should still be in the cabin");
+      assertTrue(response.contains("cellar"), "The path opened to the cellar should still be there");
+      response = restored.handleCommand("simon: inv").toLowerCase();
+      assertFalse(response.contains("key"), "The key was consumed before the snapshot");
+      response = restored.handleCommand("simon: goto cellar").toLowerCase();
+      assertTrue(response.contains("cellar"), "Simon should be able to walk down to the cellar");
+  }
+
+  @Test
+  void testRestoredEntitiesAreIndexed() throws IOException {
+      GameServer server = new GameServer(entitiesFile, actionsFile);
+      server.handleCommand("simon: get potion");
+      File file = directory.resolve("world.snapshot").toFile();
+      server.saveSnapshot(file);
+
+      GameServer restored = new GameServer(entitiesFile, actionsFile);
+      restored.restoreSnapshot(file);
+      assertFalse(restored.handleCommand("simon: look").toLowerCase().contains("potion"),
+              "The potion should no longer be in the cabin");
+      restored.handleCommand("simon: drink potion");
+      assertFalse(restored.handleCommand("simon: inv").toLowerCase().contains("potion"),
+              "Drinking the restored potion should consume it");
+  }
+
+  @Test
+  void testCorruptSnapshotIsRejected() throws IOException {
+      Path file = directory.resolve("world.snapshot");
+      new GameServer(entitiesFile, actionsFile).saveSnapshot(file.toFile());
+      byte[] bytes = Files.readAllBytes(file);
+      Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+      GameServer restored = new GameServer(entitiesFile, actionsFile);
+      assertThrows(IOException.class, () -> restored.restoreSnapshot(file.toFile()));
+  }
+
+  // Test that an artefact and furniture with the same name both come back
+  @Test
+  void testSameNamedArtefactAndFurnitureAreRestored() throws IOException {
+      String entities = Files.readString(Paths.get("config" + File.separator + "basic-entities.dot"))
+              .replace("key [description = \"Brass key\"];", "key [description = \"Brass key\"];\n trapdoor [description = \"A spare trapdoor\"];");
+      File sameNames = directory.resolve("entities.dot").toFile();
+      Files.writeString(sameNames.toPath(), entities);
+      File basicActions = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+      // swap the two round, so whichever one restoring picks by name alone the other is left behind
+      WorldSnapshot snapshot = new GameServer(sameNames, basicActions).captureSnapshot();
+      for (WorldSnapshot.LocationState state : snapshot.getLocations()) {
+          if (state.getName().equals("cabin")) {
+              state.getFurniture().remove("trapdoor");
+              state.getArtefacts().add("trapdoor");
+          } else if (state.getName().equals("forest")) {
+              state.getArtefacts().remove("trapdoor");
+              state.getFurniture().add("trapdoor");
+          }
+      }
+
+      GameServer restored = new GameServer(sameNames, basicActions);
+      restored.applySnapshot(snapshot);
+      String cabin = restored.handleCommand("simon: look");
+      assertTrue(cabin.contains("A spare trapdoor"), "The trapdoor artefact was dropped");
+      assertFalse(cabin.contains("Wooden trapdoor"), "The trapdoor furniture was left in the cabin");
+      restored.handleCommand("simon: goto forest");
+      String forest = restored.handleCommand("simon: look");
+      assertTrue(forest.contains("Wooden trapdoor"), "The trapdoor furniture was dropped");
+      assertFalse(forest.contains("A spare trapdoor"), "The trapdoor artefact was left in the forest");
+  }
+}
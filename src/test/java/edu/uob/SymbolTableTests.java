@@ -0,0 +1,90 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class SymbolTableTests {
+
+  @Test
+  void testInterning() {
+      SymbolTable symbols = new SymbolTable();
+      int axe = symbols.intern("axe");
+      int tree = symbols.intern("tree");
+      assertEquals(axe, symbols.intern("axe"), "A name keeps its ID");
+      assertEquals(tree, symbols.idOf("tree"));
+      assertEquals(-1, symbols.idOf("lumberjack"), "Unknown names have no ID");
+      assertEquals("tree", symbols.nameOf(tree));
+      // more names than the initial array holds
+      for (int i = 0; i < 500; i++) {
+          symbols.intern("name" + i);
+      }
+      assertEquals("name499", symbols.nameOf(symbols.idOf("name499")));
+      assertEquals(502, symbols.size());
+  }
+
+  @Test
+  void testTokensCarryIds() {
+      SymbolTable symbols = new SymbolTable();
+      int axe = symbols.intern("axe");
+      CommandTokenizer tokenizer = new CommandTokenizer(List.of("axe", "chop", "tree"), symbols);
+      CommandTokens tokens = new CommandTokens();
+      tokenizer.tokenize("simon: chop the tree with an AXE", tokens);
+      assertEquals(-1, tokens.id(0), "chop is in the vocabulary but doesn't name anything");
+      assertEquals(-1, tokens.id(4), "an isn't in the vocabulary at all");
+      assertEquals(axe, tokens.id(5));
+  }
+
+  @Test
+  void testIndexGrowsWithIds() {
+      SymbolTable symbols = new SymbolTable();
+      for (int i = 0; i < 1000; i++) {
+          symbols.intern("name" + i);
+      }
+      EntityIndex index = new EntityIndex();
+      Location hall = new Location("hall", "A hall");
+      Artefact far = symbols.tag(new Artefact("name999", "Far along the table"));
+      Artefact near = symbols.tag(new Artefact("name1", "Near the start"));
+      index.placeIn(far, hall);
+      index.placeIn(near, hall);
+      assertSame(far, index.get(far.getId()).getEntity());
+      assertSame(hall, index.get(near.getId()).getLocation());
+
+      index.removeFrom(far, new Location("cellar", "A cellar"));
+      assertSame(far, index.get(far.getId()).getEntity(), "It isn't in the cellar, so it stays");
+      index.removeFrom(far, hall);
+      assertNull(index.get(far.getId()));
+      assertNull(index.get(5000), "IDs past the last chunk have no placement");
+  }
+
+  @Test
+  void testOnlyActionNamesGetIds() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      GameContent content = GameContent.parse(entitiesFile, actionsFile);
+      SymbolTable symbols = content.getSymbols();
+      int size = symbols.size();
+      assertEquals(-1, symbols.idOf("cabin"), "No action refers to the cabin");
+      assertEquals(-1, symbols.idOf("storeroom"));
+
+      // every world played from the content, and every player of them, leaves the table alone
+      for (int i = 0; i < 3; i++) {
+          GameServer server = new GameServer(content);
+          for (int p = 0; p < 20; p++) {
+              server.handleCommand("player" + i + "x" + p + ": get axe");
+          }
+          server.handleCommand("simon: goto forest");
+          server.handleCommand("simon: get key");
+          assertTrue(server.handleCommand("simon: goto cabin").contains("cabin"), "The cabin is found by name");
+          assertTrue(server.handleCommand("simon: unlock trapdoor").contains("cellar"), "The trapdoor has an ID");
+      }
+      assertEquals(size, symbols.size(), "Players and worlds were given IDs");
+      assertEquals(-1, symbols.idOf("player0x0"));
+  }
+}
@@ -0,0 +1,41 @@
+package edu.uob;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+final class TriggerMatcherTests {
+
+  private final TriggerMatcher matcher = new TriggerMatcher(List.of("open", "unlock", "chop", "cut", "cut down", "hit", "bridge"));
+
+  @Test
+  void testSingleWordTrigger() {
+      assertEquals("unlock", matcher.match("unlock trapdoor with key"));
+      assertEquals("chop", matcher.match("please chop the tree using the axe"));
+  }
+
+  // The longest trigger starting at the same place should win
+  @Test
+  void testMultiWordTrigger() {
+      assertEquals("cut down", matcher.match("cut down the tree"));
+      assertEquals("cut", matcher.match("cut the tree down"));
+  }
+
+  // The trigger appearing first in the command should win, whatever the order of the actions file
+  @Test
+  void testFirstTriggerWins() {
+      assertEquals("open", matcher.match("open the trapdoor then chop the tree"));
+      assertEquals("chop", matcher.match("chop the tree then open the trapdoor"));
+  }
+
+  // Triggers hidden inside other words must not match
+  @Test
+  void testWholeWordsOnly() {
+      assertNull(matcher.match("look at the white reopened door"));
+      assertEquals("hit", matcher.match("white hit"));
+      assertNull(matcher.match(""));
+  }
+
+}
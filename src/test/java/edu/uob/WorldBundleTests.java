@@ -0,0 +1,92 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class WorldBundleTests {
+
+  private File entitiesFile;
+  private File actionsFile;
+
+  @TempDir
+  Path directory;
+
+  @BeforeEach
+  void setup() throws IOException {
+      // copies, so the tests can change them
+      entitiesFile = directory.resolve("extended-entities.dot").toFile();
+      actionsFile = directory.resolve("extended-actions.xml").toFile();
+      Files.copy(Paths.get("config", "extended-entities.dot"), entitiesFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.copy(Paths.get("config", "extended-actions.xml"), actionsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static String play(GameServer server) {
+      StringBuilder responses = new StringBuilder();
+      for (String command : new String[] {"look", "get axe", "goto forest", "look", "chop tree with axe", "get log", "goto cabin", "open trapdoor", "goto riverbank", "inv"}) {
+          responses.append(server.handleCommand("simon: " + command));
+      }
+      return responses.toString();
+  }
+
+  @Test
+  void testBundlePlaysLikeSourceFiles() throws IOException {
+      File bundleFile = directory.resolve("world.bundle").toFile();
+      WorldBundle.parse(entitiesFile, actionsFile).write(bundleFile.toPath());
+      WorldBundle bundle = WorldBundle.read(bundleFile.toPath());
+      assertEquals(WorldBundle.parse(entitiesFile, actionsFile).getLocations().size(), bundle.getLocations().size());
+
+      String expected = play(new GameServer(entitiesFile, actionsFile));
+      assertEquals(expected, play(new GameServer(entitiesFile, actionsFile, bundleFile)));
+  }
+
+  @Test
+  void testStaleBundleFallsBackToSourceFiles() throws IOException {
+      File bundleFile = directory.resolve("world.bundle").toFile();
+      WorldBundle.parse(entitiesFile, actionsFile).write(bundleFile.toPath());
+      String actions = Files.readString(actionsFile.toPath(), StandardCharsets.UTF_8);
+      Files.writeString(actionsFile.toPath(), actions.replace("<keyphrase>chop</keyphrase>", "<keyphrase>fell</keyphrase>"), StandardCharsets.UTF_8);
+
+      GameServer server = new GameServer(entitiesFile, actionsFile, bundleFile);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      String response = server.handleCommand("simon: fell tree").toLowerCase();
+      assertTrue(response.contains("cut down"), "The changed actions file should have been loaded instead of the bundle");
+  }
+
+  @Test
+  void testUnchangedSizeAndTimeTrustBundle() throws IOException {
+      File bundleFile = directory.resolve("world.bundle").toFile();
+      WorldBundle.parse(entitiesFile, actionsFile).write(bundleFile.toPath());
+      // the same size and modification time, so the file isn't read again for its checksum
+      FileTime modified = Files.getLastModifiedTime(actionsFile.toPath());
+      String actions = Files.readString(actionsFile.toPath(), StandardCharsets.UTF_8);
+      Files.writeString(actionsFile.toPath(), actions.replace("<keyphrase>chop</keyphrase>", "<keyphrase>fell</keyphrase>"), StandardCharsets.UTF_8);
+      Files.setLastModifiedTime(actionsFile.toPath(), modified);
+
+      GameServer server = new GameServer(entitiesFile, actionsFile, bundleFile);
+      server.handleCommand("simon: get axe");
+      server.handleCommand("simon: goto forest");
+      assertTrue(server.handleCommand("simon: chop tree").toLowerCase().contains("cut down"), "The bundle should have been loaded");
+  }
+
+  @Test
+  void testCorruptBundleIsReported() throws IOException {
+      File bundleFile = directory.resolve("world.bundle").toFile();
+      Files.write(bundleFile.toPath(), new byte[] {1, 2, 3});
+      IOException e = assertThrows(IOException.class, () -> new GameServer(entitiesFile, actionsFile, bundleFile));
+      assertTrue(e.getMessage().contains(bundleFile.getName()), "The problem should name the bundle");
+  }
+}
@@ -0,0 +1,108 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class WorldHostTests {
+
+  private WorldHost host;
+
+  @BeforeEach
+  void setup() {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      host = new WorldHost(GameContent.parse(entitiesFile, actionsFile), 2);
+  }
+
+  @Test
+  void testWorldsAreIndependent() {
+      host.handleCommand("north/simon: get axe");
+      host.handleCommand("north/simon: goto forest");
+      host.handleCommand("north/simon: chop tree with axe");
+
+      assertTrue(host.handleCommand("north/simon: look").contains("heavy wooden log"), "The tree should have been chopped in the north world");
+      host.handleCommand("south/simon: goto forest");
+      String response = host.handleCommand("south/simon: look");
+      assertTrue(response.contains("tree"), "The south world should still have its tree");
+      assertFalse(response.contains("heavy wooden log"), "The south world should still have its tree");
+      assertFalse(host.handleCommand("south/simon: inv").contains("axe"), "The axe picked up in the north world shouldn't be held in the south world");
+  }
+
+  @Test
+  void testWorldsShareContent() {
+      GameServer north = host.getWorld("north");
+      GameServer south = host.getWorld("south");
+      assertSame(north.getActions().get("chop").iterator().next(), south.getActions().get("chop").iterator().next(),
+              "Worlds played from the same content should share their actions");
+      Location northCabin = north.getLocations().stream().filter(location -> location.getName().equals("cabin")).findFirst().orElseThrow();
+      Location southCabin = south.getLocations().stream().filter(location -> location.getName().equals("cabin")).findFirst().orElseThrow();
+      assertSame(northCabin.getDescription(), southCabin.getDescription(), "Worlds should share their descriptions");
+  }
+
+  @Test
+  void testCommandRouting() {
+      assertEquals(host.getWorld(WorldHost.DEFAULT_WORLD).handleCommand("simon: look"), host.handleCommand("simon: look"));
+      host.handleCommand("north/simon: look");
+      // the host only has room for two worlds
+      assertTrue(host.handleCommand("east/simon: look").startsWith("[Error]"), "A full host shouldn't start more worlds");
+      assertEquals(2, host.getWorldIds().size());
+      host.removeWorld("north");
+      assertFalse(host.handleCommand("east/simon: look").startsWith("[Error]"), "A removed world should make room for another one");
+  }
+
+  @Test
+  void testIdleWorldsAreEvicted() throws InterruptedException {
+      File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+      File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+      // long enough for the first commands of a cold JVM
+      WorldHost idleHost = new WorldHost(GameContent.parse(entitiesFile, actionsFile), 2, 1, TimeUnit.SECONDS);
+      idleHost.handleCommand("north/simon: get axe");
+      idleHost.handleCommand("south/simon: look");
+      assertEquals(0, idleHost.evictIdleWorlds(), "Worlds just played shouldn't be evicted");
+
+      Thread.sleep(1200);
+      idleHost.handleCommand("south/simon: look");
+      // the north world has been idle for long enough to make room
+      assertFalse(idleHost.handleCommand("east/simon: look").startsWith("[Error]"), "An idle world should make room for another one");
+      assertEquals(Set.of("south", "east"), idleHost.getWorldIds());
+      idleHost.removeWorld("east");
+      String inventory = idleHost.handleCommand("north/simon: inv");
+      assertFalse(inventory.startsWith("[Error]") || inventory.contains("axe"), "An evicted world should start over");
+  }
+
+  // Test that commands which don't wait for their changes to be saved are routed as such
+  @Test
+  void testSavedCallbacksArePassedThrough(@TempDir Path directory) throws Exception {
+      host.getWorld("north").openJournal(directory.toFile());
+      // a world waiting for its journal itself would call back on the thread handling the command
+      CompletableFuture<String> single = new CompletableFuture<>();
+      StringBuilder response = new StringBuilder();
+      host.handleCommand("north/simon: get axe", ResponseSink.of(response), saved -> single.complete(Thread.currentThread().getName()));
+      assertEquals("journal-flusher", single.get(10, TimeUnit.SECONDS), "The world should call back once its journal is flushed");
+      assertTrue(response.toString().contains("axe"), "Did not get the axe");
+
+      CompletableFuture<String> binary = new CompletableFuture<>();
+      host.handleCommand("north/simon", StandardCharsets.UTF_8.encode("drop axe"), ResponseSink.of(new StringBuilder()),
+              saved -> binary.complete(Thread.currentThread().getName()));
+      assertEquals("journal-flusher", binary.get(10, TimeUnit.SECONDS), "The world should call back once its journal is flushed");
+
+      CompletableFuture<Boolean> batch = new CompletableFuture<>();
+      List<String> responses = host.handleBatch(List.of("north/simon: get axe", "south/simon: look", "north/simon: inv"), batch::complete);
+      assertTrue(batch.get(10, TimeUnit.SECONDS), "The batch should be saved");
+      assertTrue(responses.get(2).contains("axe"), "The axe is not in the inventory");
+  }
+}